@@ -0,0 +1,39 @@
+package com.ragchat.config;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Request factory that can hand the underlying HttpClient request to the caller, so
+ * a streamed call can be aborted. Aborting closes the connection; closing the
+ * response instead would first read the rest of the body.
+ */
+public class AbortableRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private static final ThreadLocal<Consumer<HttpUriRequestBase>> requestListener = new ThreadLocal<>();
+
+    public AbortableRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    /** Runs the call, passing every request it creates on this thread to {@code onRequest}. */
+    public static <T> T capturing(Consumer<HttpUriRequestBase> onRequest, Supplier<T> call) {
+        requestListener.set(onRequest);
+        try {
+            return call.get();
+        } finally {
+            requestListener.remove();
+        }
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        Consumer<HttpUriRequestBase> onRequest = requestListener.get();
+        if (onRequest != null && request instanceof HttpUriRequestBase abortable) onRequest.accept(abortable);
+    }
+}
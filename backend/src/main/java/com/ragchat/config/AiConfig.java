@@ -1,20 +1,85 @@
 package com.ragchat.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @ConfigurationProperties(prefix = "ai")
 public class AiConfig {
     private String apiKey;
     private String chatModel;
     private String apiBaseUrl;
+    private long streamTimeoutMs = 300_000; // SSE answers are cut off after this long
+    private int streamThreads = 32;         // Streamed answers generated at the same time (platform threads only)
+    private int streamQueueCapacity = 100;  // Streams waiting for a thread; more are rejected with 503
+    private int maxConcurrentRequests = 64; // In-flight calls to the AI API
+    private long acquireTimeoutMs = 30_000; // Wait for a free slot before treating the API as overloaded
+    private int maxConnections = 64;        // Pooled connections to the AI API
+    private long connectTimeoutMs = 5_000;
+    private long readTimeoutMs = 120_000;   // Max silence between bytes; also bounds gaps in a stream
+    private long poolTimeoutMs = 10_000;    // Wait for a pooled connection
+    private long keepAliveMs = 60_000;      // Used when the server sends no Keep-Alive header
+    private long connectionTtlMs = 300_000; // Connections are recycled after this long
+    private int retryMaxAttempts = 4;       // Including the first attempt
+    private long retryBaseDelayMs = 500;    // Backoff ceiling doubles from here per attempt
+    private long retryMaxDelayMs = 8_000;
+    private long requestDeadlineMs = 60_000; // No retry is started that would end past this
+    private int circuitFailureThreshold = 5; // Consecutive failures that open the circuit
+    private long circuitOpenMs = 30_000;    // Fail fast for this long before a trial call
+    private int promptTokenBudget = 16_000; // Whole prompt: system prompt, history, question and documents
+    private Map<String, Integer> modelPromptTokenBudgets = new HashMap<>(); // Per chat model, overrides promptTokenBudget
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager aiConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections) // Everything goes to one host
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMilliseconds(connectionTtlMs))
+                        .build())
+                .build();
+
+        // Pool saturation: leased near max with pending > 0 means calls are queuing for connections
+        Gauge.builder("ai.client.pool.leased", manager, m -> m.getTotalStats().getLeased()).register(meterRegistry);
+        Gauge.builder("ai.client.pool.available", manager, m -> m.getTotalStats().getAvailable()).register(meterRegistry);
+        Gauge.builder("ai.client.pool.pending", manager, m -> m.getTotalStats().getPending()).register(meterRegistry);
+        Gauge.builder("ai.client.pool.max", manager, m -> m.getTotalStats().getMax()).register(meterRegistry);
+        return manager;
+    }
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(PoolingHttpClientConnectionManager aiConnectionManager) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(aiConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        // Used when the server sends no Keep-Alive timeout
+                        .setDefaultKeepAlive(keepAliveMs, TimeUnit.MILLISECONDS)
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+        // Streams are aborted through the factory when the client goes away
+        return new RestTemplate(new AbortableRequestFactory(httpClient));
     }
 
     public String getApiKey() { return apiKey; }
@@ -23,4 +88,47 @@ public class AiConfig {
     public void setChatModel(String chatModel) { this.chatModel = chatModel; }
     public String getApiBaseUrl() { return apiBaseUrl; }
     public void setApiBaseUrl(String apiBaseUrl) { this.apiBaseUrl = apiBaseUrl; }
+    public long getStreamTimeoutMs() { return streamTimeoutMs; }
+    public void setStreamTimeoutMs(long streamTimeoutMs) { this.streamTimeoutMs = streamTimeoutMs; }
+    public int getStreamThreads() { return streamThreads; }
+    public void setStreamThreads(int streamThreads) { this.streamThreads = streamThreads; }
+    public int getStreamQueueCapacity() { return streamQueueCapacity; }
+    public void setStreamQueueCapacity(int streamQueueCapacity) { this.streamQueueCapacity = streamQueueCapacity; }
+    public int getMaxConcurrentRequests() { return maxConcurrentRequests; }
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) { this.maxConcurrentRequests = maxConcurrentRequests; }
+    public long getAcquireTimeoutMs() { return acquireTimeoutMs; }
+    public void setAcquireTimeoutMs(long acquireTimeoutMs) { this.acquireTimeoutMs = acquireTimeoutMs; }
+    public int getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+    public long getConnectTimeoutMs() { return connectTimeoutMs; }
+    public void setConnectTimeoutMs(long connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+    public long getReadTimeoutMs() { return readTimeoutMs; }
+    public void setReadTimeoutMs(long readTimeoutMs) { this.readTimeoutMs = readTimeoutMs; }
+    public long getPoolTimeoutMs() { return poolTimeoutMs; }
+    public void setPoolTimeoutMs(long poolTimeoutMs) { this.poolTimeoutMs = poolTimeoutMs; }
+    public long getKeepAliveMs() { return keepAliveMs; }
+    public void setKeepAliveMs(long keepAliveMs) { this.keepAliveMs = keepAliveMs; }
+    public long getConnectionTtlMs() { return connectionTtlMs; }
+    public void setConnectionTtlMs(long connectionTtlMs) { this.connectionTtlMs = connectionTtlMs; }
+    public int getRetryMaxAttempts() { return retryMaxAttempts; }
+    public void setRetryMaxAttempts(int retryMaxAttempts) { this.retryMaxAttempts = retryMaxAttempts; }
+    public long getRetryBaseDelayMs() { return retryBaseDelayMs; }
+    public void setRetryBaseDelayMs(long retryBaseDelayMs) { this.retryBaseDelayMs = retryBaseDelayMs; }
+    public long getRetryMaxDelayMs() { return retryMaxDelayMs; }
+    public void setRetryMaxDelayMs(long retryMaxDelayMs) { this.retryMaxDelayMs = retryMaxDelayMs; }
+    public long getRequestDeadlineMs() { return requestDeadlineMs; }
+    public void setRequestDeadlineMs(long requestDeadlineMs) { this.requestDeadlineMs = requestDeadlineMs; }
+    public int getCircuitFailureThreshold() { return circuitFailureThreshold; }
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) { this.circuitFailureThreshold = circuitFailureThreshold; }
+    public long getCircuitOpenMs() { return circuitOpenMs; }
+    public void setCircuitOpenMs(long circuitOpenMs) { this.circuitOpenMs = circuitOpenMs; }
+    public int getPromptTokenBudget() { return promptTokenBudget; }
+    public void setPromptTokenBudget(int promptTokenBudget) { this.promptTokenBudget = promptTokenBudget; }
+    public Map<String, Integer> getModelPromptTokenBudgets() { return modelPromptTokenBudgets; }
+    public void setModelPromptTokenBudgets(Map<String, Integer> modelPromptTokenBudgets) { this.modelPromptTokenBudgets = modelPromptTokenBudgets; }
+
+    /** Prompt token budget of the configured chat model. */
+    public int promptTokenBudgetForChatModel() {
+        return chatModel != null ? modelPromptTokenBudgets.getOrDefault(chatModel, promptTokenBudget) : promptTokenBudget;
+    }
 }
@@ -6,12 +6,15 @@ import com.ragchat.model.Conversation;
 import com.ragchat.model.User;
 import com.ragchat.repository.UserRepository;
 import com.ragchat.service.ChatService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api")
@@ -47,19 +50,57 @@ public class ChatController {
         }
     }
 
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> chatStream(@RequestBody ChatRequest request) {
+        String userId = getCurrentUserId();
+        try {
+            return ResponseEntity.ok(chatService.streamChat(request, userId));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "5")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", "Too many answers in progress, try again shortly"));
+        }
+    }
+
     @GetMapping("/conversations")
-    public ResponseEntity<List<Conversation>> getConversations() {
+    public ResponseEntity<?> getConversations(@RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
         String userId = getCurrentUserId();
-        return ResponseEntity.ok(chatService.getConversations(userId));
+        try {
+            return ResponseEntity.ok(chatService.getConversations(userId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
+    // Latest messages only; older ones are paged in through /messages.
+    // Another user's conversation is reported as not found, like a missing one
     @GetMapping("/conversations/{id}")
-    public ResponseEntity<Conversation> getConversation(@PathVariable String id) {
-        Conversation conversation = chatService.getConversation(id);
-        if (conversation == null) return ResponseEntity.notFound().build();
+    public ResponseEntity<Conversation> getConversation(@PathVariable String id,
+                                                        @RequestParam(required = false) Integer messages) {
+        String userId = getCurrentUserId();
+        Conversation conversation = chatService.getConversation(id, messages);
+        if (conversation == null || !userId.equals(conversation.getUserId())) return ResponseEntity.notFound().build();
         return ResponseEntity.ok(conversation);
     }
 
+    @GetMapping("/conversations/{id}/messages")
+    public ResponseEntity<?> getMessages(@PathVariable String id,
+                                         @RequestParam(required = false) String before,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(required = false) Integer limit) {
+        if (!chatService.isOwner(id, getCurrentUserId())) return ResponseEntity.notFound().build();
+        if (before != null && after != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Use either before or after, not both"));
+        }
+        try {
+            return ResponseEntity.ok(chatService.getMessages(id, before, after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @DeleteMapping("/conversations/{id}")
     public ResponseEntity<Void> deleteConversation(@PathVariable String id) {
         chatService.deleteConversation(id);
@@ -2,11 +2,15 @@ package com.ragchat.controller;
 
 import com.ragchat.model.DocumentInfo;
 import com.ragchat.service.DocumentService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -19,11 +23,27 @@ public class DocumentController {
     }
 
     @PostMapping("/upload")
-    public ResponseEntity<DocumentInfo> uploadDocument(
+    public ResponseEntity<?> uploadDocument(
             @RequestParam("file") MultipartFile file,
             @RequestParam("conversationId") String conversationId) {
-        DocumentInfo result = documentService.uploadDocument(file, conversationId);
-        return ResponseEntity.ok(result);
+        try {
+            // Processing continues in the background; poll /{documentId}/status for progress
+            DocumentInfo result = documentService.uploadDocument(file, conversationId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", "10")
+                    .body(Map.of("error", "Too many uploads in progress, try again shortly"));
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body(Map.of("error", "Failed to read upload"));
+        }
+    }
+
+    @GetMapping("/{documentId}/status")
+    public ResponseEntity<DocumentInfo> getDocumentStatus(@PathVariable String documentId) {
+        return documentService.getDocument(documentId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping
@@ -0,0 +1,45 @@
+package com.ragchat.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Conversation list entry: what the sidebar shows, without the message history.
+ */
+public class ConversationSummary {
+    private String id;
+    private String title;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private long messageCount;
+    private String lastMessage;
+    private List<String> documentIds;
+
+    public ConversationSummary() {}
+
+    public ConversationSummary(String id, String title, LocalDateTime createdAt, LocalDateTime updatedAt,
+                               long messageCount, String lastMessage, List<String> documentIds) {
+        this.id = id;
+        this.title = title;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.messageCount = messageCount;
+        this.lastMessage = lastMessage;
+        this.documentIds = documentIds;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public long getMessageCount() { return messageCount; }
+    public void setMessageCount(long messageCount) { this.messageCount = messageCount; }
+    public String getLastMessage() { return lastMessage; }
+    public void setLastMessage(String lastMessage) { this.lastMessage = lastMessage; }
+    public List<String> getDocumentIds() { return documentIds; }
+    public void setDocumentIds(List<String> documentIds) { this.documentIds = documentIds; }
+}
@@ -1,12 +1,14 @@
 package com.ragchat.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = @Index(name = "idx_conversations_user_updated", columnList = "user_id, updated_at"))
 public class Conversation {
 
     @Id
@@ -22,6 +24,9 @@ public class Conversation {
     @Transient // Source of truth is DocumentInfoRepository (documents table)
     private List<String> documentIds = new ArrayList<>();
 
+    @Transient // Cursor for the messages before the loaded ones; null when all are loaded
+    private String messagesCursor;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -37,6 +42,8 @@ public class Conversation {
     public void setMessages(List<Message> messages) { this.messages = messages; }
     public List<String> getDocumentIds() { return documentIds; }
     public void setDocumentIds(List<String> documentIds) { this.documentIds = documentIds; }
+    public String getMessagesCursor() { return messagesCursor; }
+    public void setMessagesCursor(String messagesCursor) { this.messagesCursor = messagesCursor; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
@@ -46,15 +53,16 @@ public class Conversation {
     public static class Message {
         private String role;
         private String content;
-        private List<ChatResponse.SourceReference> sources;
+        private String sourcesJson; // As stored; written to responses verbatim when well-formed
         private LocalDateTime timestamp;
 
         public Message() {}
 
-        public Message(String role, String content, List<ChatResponse.SourceReference> sources, LocalDateTime timestamp) {
+        public Message(String role, String content, String sourcesJson, LocalDateTime timestamp) {
             this.role = role;
             this.content = content;
-            this.sources = sources;
+            // A malformed row must not break the whole response; it shows as no sources
+            this.sourcesJson = MessageEntity.isWellFormedJson(sourcesJson) ? sourcesJson : null;
             this.timestamp = timestamp;
         }
 
@@ -62,8 +70,9 @@ public class Conversation {
         public void setRole(String role) { this.role = role; }
         public String getContent() { return content; }
         public void setContent(String content) { this.content = content; }
-        public List<ChatResponse.SourceReference> getSources() { return sources; }
-        public void setSources(List<ChatResponse.SourceReference> sources) { this.sources = sources; }
+        @JsonProperty("sources")
+        @JsonRawValue
+        public String getSourcesJson() { return sourcesJson; }
         public LocalDateTime getTimestamp() { return timestamp; }
         public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
     }
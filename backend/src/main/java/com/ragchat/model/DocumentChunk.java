@@ -3,7 +3,7 @@ package com.ragchat.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "document_chunks")
+@Table(name = "document_chunks", indexes = @Index(name = "idx_document_chunks_conversation", columnList = "conversation_id"))
 public class DocumentChunk {
 
     @Id
@@ -24,9 +24,16 @@ public class DocumentChunk {
 
     private String section; // e.g. "Introduction", "Summary"
 
+    @Column(name = "token_count", columnDefinition = "integer default 0")
+    private int tokenCount; // Estimated prompt tokens of the content, set at ingestion; 0 on older rows
+
+    // Legacy float8[] storage, only read to migrate old rows into embeddingData
     @Column(columnDefinition = "float8[]")
     private double[] embedding;
 
+    @Column(name = "embedding_data")
+    private byte[] embeddingData; // EmbeddingCodec-encoded (float32 or int8)
+
     public DocumentChunk() {}
 
     public DocumentChunk(String id, String documentId, String documentName, String content, int chunkIndex, double[] embedding) {
@@ -50,9 +57,13 @@ public class DocumentChunk {
     public void setChunkIndex(int chunkIndex) { this.chunkIndex = chunkIndex; }
     public double[] getEmbedding() { return embedding; }
     public void setEmbedding(double[] embedding) { this.embedding = embedding; }
+    public byte[] getEmbeddingData() { return embeddingData; }
+    public void setEmbeddingData(byte[] embeddingData) { this.embeddingData = embeddingData; }
 
     public String getSection() { return section; }
     public void setSection(String section) { this.section = section; }
+    public int getTokenCount() { return tokenCount; }
+    public void setTokenCount(int tokenCount) { this.tokenCount = tokenCount; }
     public String getConversationId() { return conversationId; }
     public void setConversationId(String conversationId) { this.conversationId = conversationId; }
 }
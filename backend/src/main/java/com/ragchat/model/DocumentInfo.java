@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = @Index(name = "idx_documents_conversation", columnList = "conversation_id"))
 public class DocumentInfo {
 
     @Id
@@ -15,12 +15,18 @@ public class DocumentInfo {
     private long size;
     private int totalChunks;
 
+    @Column(columnDefinition = "bigint default 0")
+    private long processedBytes; // Progress while PROCESSING: bytes of the file parsed so far, out of size
+
     @Column(name = "conversation_id")
     private String conversationId;
 
     private LocalDateTime uploadedAt;
     private String status;
 
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // SHA-256 of the uploaded bytes
+
     public DocumentInfo() {}
 
     public DocumentInfo(String id, String name, String type, long size, int totalChunks, String conversationId, LocalDateTime uploadedAt, String status) {
@@ -44,10 +50,14 @@ public class DocumentInfo {
     public void setSize(long size) { this.size = size; }
     public int getTotalChunks() { return totalChunks; }
     public void setTotalChunks(int totalChunks) { this.totalChunks = totalChunks; }
+    public long getProcessedBytes() { return processedBytes; }
+    public void setProcessedBytes(long processedBytes) { this.processedBytes = processedBytes; }
     public String getConversationId() { return conversationId; }
     public void setConversationId(String conversationId) { this.conversationId = conversationId; }
     public LocalDateTime getUploadedAt() { return uploadedAt; }
     public void setUploadedAt(LocalDateTime uploadedAt) { this.uploadedAt = uploadedAt; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
 }
@@ -1,15 +1,16 @@
 package com.ragchat.model;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.persistence.*;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = @Index(name = "idx_messages_conversation_time", columnList = "conversation_id, timestamp, id"))
 public class MessageEntity {
 
     @Id
@@ -54,17 +55,12 @@ public class MessageEntity {
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
-    // Helper to convert JSON <-> Object
+    // Helper to convert Object -> JSON; the writer is immutable and shared
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter SOURCES_WRITER = mapper.writer();
 
-    public List<ChatResponse.SourceReference> getSources() {
-        if (sourcesJson == null || sourcesJson.isBlank()) return null;
-        try {
-            return mapper.readValue(sourcesJson, new TypeReference<List<ChatResponse.SourceReference>>() {});
-        } catch (IOException e) {
-            return null;
-        }
-    }
+    /** The stored JSON, for callers that pass it on without parsing it. */
+    public String getSourcesJson() { return sourcesJson; }
 
     public void setSources(List<ChatResponse.SourceReference> sources) {
         if (sources == null) {
@@ -72,9 +68,24 @@ public class MessageEntity {
             return;
         }
         try {
-            this.sourcesJson = mapper.writeValueAsString(sources);
+            this.sourcesJson = SOURCES_WRITER.writeValueAsString(sources);
         } catch (JsonProcessingException e) {
             this.sourcesJson = "[]";
         }
     }
+
+    /**
+     * Whether the text is exactly one well-formed JSON value, checked with the
+     * streaming parser (nothing is bound), so it is safe to embed verbatim.
+     */
+    public static boolean isWellFormedJson(String json) {
+        if (json == null || json.isBlank()) return false;
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() == null) return false;
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
 }
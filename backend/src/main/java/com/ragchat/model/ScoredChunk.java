@@ -0,0 +1,25 @@
+package com.ragchat.model;
+
+/**
+ * A retrieved chunk together with its similarity to the query.
+ * After {@link com.ragchat.service.PassageMerger} the chunk may be a passage built
+ * from several neighbouring stored chunks: its content spans all of them, while its
+ * id is only representative (that of the best scoring member) and its chunk index
+ * is the first member's.
+ */
+public class ScoredChunk {
+    private DocumentChunk chunk;
+    private double score;
+
+    public ScoredChunk() {}
+
+    public ScoredChunk(DocumentChunk chunk, double score) {
+        this.chunk = chunk;
+        this.score = score;
+    }
+
+    public DocumentChunk getChunk() { return chunk; }
+    public void setChunk(DocumentChunk chunk) { this.chunk = chunk; }
+    public double getScore() { return score; }
+    public void setScore(double score) { this.score = score; }
+}
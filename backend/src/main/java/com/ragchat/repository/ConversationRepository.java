@@ -2,8 +2,11 @@ package com.ragchat.repository;
 
 import com.ragchat.model.Conversation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -14,5 +17,39 @@ public interface ConversationRepository extends JpaRepository<Conversation, Stri
 
     // Find conversations for a specific user
     List<Conversation> findAllByUserIdOrderByUpdatedAtDesc(String userId);
-    
+
+    boolean existsByIdAndUserId(String id, String userId);
+
+    // Sidebar listing in one query: counts, the last message preview and document ids
+    // come from correlated subqueries instead of loading messages and documents per row.
+    // Keyset pages over (updated_at, id), most recently updated first
+    String SUMMARY_SELECT =
+            "select c.id as id, c.title as title, c.created_at as createdAt, c.updated_at as updatedAt, " +
+            "(select count(*) from messages m where m.conversation_id = c.id) as messageCount, " +
+            "(select left(m.content, :previewLength) from messages m where m.conversation_id = c.id " +
+            " order by m.timestamp desc, m.id desc limit 1) as lastMessage, " +
+            "(select string_agg(d.id, ',' order by d.uploaded_at) from documents d where d.conversation_id = c.id) as documentIds " +
+            "from conversations c where c.user_id = :userId ";
+
+    @Query(value = SUMMARY_SELECT + "order by c.updated_at desc, c.id desc limit :limit", nativeQuery = true)
+    List<SummaryRow> findSummariesByUserId(@Param("userId") String userId, @Param("previewLength") int previewLength,
+                                           @Param("limit") int limit);
+
+    @Query(value = SUMMARY_SELECT +
+                   "and (c.updated_at < :updatedAt or (c.updated_at = :updatedAt and c.id < :id)) " +
+                   "order by c.updated_at desc, c.id desc limit :limit",
+           nativeQuery = true)
+    List<SummaryRow> findSummariesByUserIdBefore(@Param("userId") String userId, @Param("updatedAt") LocalDateTime updatedAt,
+                                                 @Param("id") String id, @Param("previewLength") int previewLength,
+                                                 @Param("limit") int limit);
+
+    interface SummaryRow {
+        String getId();
+        String getTitle();
+        LocalDateTime getCreatedAt();
+        LocalDateTime getUpdatedAt();
+        long getMessageCount();
+        String getLastMessage();
+        String getDocumentIds(); // Comma-separated, null when there are none
+    }
 }
@@ -0,0 +1,70 @@
+package com.ragchat.repository;
+
+import com.ragchat.model.DocumentChunk;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Bulk inserts for document chunks. Goes through plain JDBC batches instead of
+ * JpaRepository.saveAll, which would check and insert every row on its own.
+ */
+@Repository
+public class DocumentChunkBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO document_chunks (id, document_id, document_name, content, chunk_index, conversation_id, section, embedding_data, token_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Same, also filling the full-text column from the content in the same statement
+    private static final String INSERT_WITH_TSV_SQL =
+            "INSERT INTO document_chunks (id, document_id, document_name, content, chunk_index, conversation_id, section, embedding_data, token_count, content_tsv) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, to_tsvector('simple', coalesce(?, '')))";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Set once the content_tsv column exists (see LexicalSearchService)
+    private volatile boolean fullTextColumn;
+
+    public DocumentChunkBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the chunks only while their document still exists. The document row is
+     * locked for the transaction, so a concurrent delete of the document waits until
+     * the chunks are committed and then sees them. Returns false, inserting nothing,
+     * when the document is already gone.
+     */
+    @Transactional
+    public boolean insertForDocument(String documentId, List<DocumentChunk> chunks, int batchSize) {
+        List<String> locked = jdbcTemplate.queryForList(
+                "SELECT id FROM documents WHERE id = ? FOR UPDATE", String.class, documentId);
+        if (locked.isEmpty()) return false;
+        insertAll(chunks, batchSize);
+        return true;
+    }
+
+    /** From now on inserts also compute the chunk's full-text vector. */
+    public void enableFullTextColumn() {
+        fullTextColumn = true;
+    }
+
+    public void insertAll(List<DocumentChunk> chunks, int batchSize) {
+        if (chunks.isEmpty()) return;
+        boolean withTsv = fullTextColumn;
+        jdbcTemplate.batchUpdate(withTsv ? INSERT_WITH_TSV_SQL : INSERT_SQL, chunks, Math.max(1, batchSize), (ps, chunk) -> {
+            ps.setString(1, chunk.getId());
+            ps.setString(2, chunk.getDocumentId());
+            ps.setString(3, chunk.getDocumentName());
+            ps.setString(4, chunk.getContent());
+            ps.setInt(5, chunk.getChunkIndex());
+            ps.setString(6, chunk.getConversationId());
+            ps.setString(7, chunk.getSection());
+            ps.setBytes(8, chunk.getEmbeddingData());
+            ps.setInt(9, chunk.getTokenCount());
+            if (withTsv) ps.setString(10, chunk.getContent());
+        });
+    }
+}
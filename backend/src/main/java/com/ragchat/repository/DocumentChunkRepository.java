@@ -2,16 +2,32 @@ package com.ragchat.repository;
 
 import com.ragchat.model.DocumentChunk;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
 public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, String> {
-    
+
     List<DocumentChunk> findByConversationId(String conversationId);
-    
+
+    long countByConversationId(String conversationId);
+
+    // Embeddings only (no content) for building the in-memory vector index
+    @Query("select c.id as id, c.documentId as documentId, c.embeddingData as embeddingData, c.embedding as embedding " +
+           "from DocumentChunk c where c.conversationId = :conversationId")
+    List<ChunkEmbedding> findEmbeddingsByConversationId(@Param("conversationId") String conversationId);
+
     void deleteByConversationId(String conversationId);
-    
+
     void deleteByDocumentId(String documentId);
+
+    interface ChunkEmbedding {
+        String getId();
+        String getDocumentId();
+        byte[] getEmbeddingData();
+        double[] getEmbedding(); // Legacy rows not migrated yet
+    }
 }
@@ -2,7 +2,11 @@ package com.ragchat.repository;
 
 import com.ragchat.model.DocumentInfo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -10,5 +14,19 @@ import java.util.List;
 public interface DocumentInfoRepository extends JpaRepository<DocumentInfo, String> {
     
     List<DocumentInfo> findByConversationId(String conversationId);
-    
+
+    List<DocumentInfo> findByStatus(String status);
+
+    // Ingestion updates touch the row only if it still exists; 0 means the document was deleted
+
+    @Transactional
+    @Modifying
+    @Query("update DocumentInfo d set d.processedBytes = :processedBytes where d.id = :id")
+    int updateProgress(@Param("id") String id, @Param("processedBytes") long processedBytes);
+
+    @Transactional
+    @Modifying
+    @Query("update DocumentInfo d set d.status = :status, d.totalChunks = :totalChunks where d.id = :id")
+    int updateStatus(@Param("id") String id, @Param("status") String status, @Param("totalChunks") int totalChunks);
+
 }
@@ -1,9 +1,13 @@
 package com.ragchat.repository;
 
 import com.ragchat.model.MessageEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,6 +15,39 @@ public interface MessageRepository extends JpaRepository<MessageEntity, Long> {
     
     // Find all messages for a conversation, ordered by time
     List<MessageEntity> findByConversationIdOrderByTimestampAsc(String conversationId);
+
+    // Keyset pages over (timestamp, id); the page size comes from the Pageable
+
+    // Newest messages first: the "latest N" view
+    List<MessageEntity> findByConversationIdOrderByTimestampDescIdDesc(String conversationId, Pageable page);
+
+    // Messages older than the cursor, newest first
+    @Query("select m from MessageEntity m where m.conversationId = :conversationId " +
+           "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+           "order by m.timestamp desc, m.id desc")
+    List<MessageEntity> findPageBefore(@Param("conversationId") String conversationId,
+                                       @Param("timestamp") LocalDateTime timestamp, @Param("id") Long id,
+                                       Pageable page);
+
+    // Messages newer than the cursor, oldest first
+    @Query("select m from MessageEntity m where m.conversationId = :conversationId " +
+           "and (m.timestamp > :timestamp or (m.timestamp = :timestamp and m.id > :id)) " +
+           "order by m.timestamp asc, m.id asc")
+    List<MessageEntity> findPageAfter(@Param("conversationId") String conversationId,
+                                      @Param("timestamp") LocalDateTime timestamp, @Param("id") Long id,
+                                      Pageable page);
+
+    // Prompt history: the latest messages, newest first, with only role and content;
+    // content is cut to maxChars in the database so long answers are not transferred
+    @Query("select m.role as role, substring(m.content, 1, :maxChars) as content from MessageEntity m " +
+           "where m.conversationId = :conversationId order by m.timestamp desc, m.id desc")
+    List<HistoryEntry> findRecentHistory(@Param("conversationId") String conversationId,
+                                         @Param("maxChars") int maxChars, Pageable page);
+
+    interface HistoryEntry {
+        String getRole();
+        String getContent();
+    }
     
     // Delete all messages for a conversation
     void deleteByConversationId(String conversationId);
@@ -0,0 +1,312 @@
+package com.ragchat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ragchat.config.AbortableRequestFactory;
+import com.ragchat.config.AiConfig;
+import com.ragchat.model.Conversation;
+import com.ragchat.util.Cancellation;
+import com.ragchat.util.TokenEstimator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Calls the OpenAI-compatible chat completions API, either waiting for the whole
+ * answer or forwarding streamed deltas as they arrive.
+ * Failures worth retrying (rate limit, overload, timeouts) are thrown as
+ * {@link AiRetryPolicy.RetryableException}; a full local request queue and a context
+ * too large for the model are retried as {@link AiRetryPolicy.LocalRetryableException},
+ * which does not count against the upstream. Other API errors and malformed responses
+ * are thrown as {@link AiRetryPolicy.UnavailableException} carrying a message for the
+ * user, so an error text is never mistaken for an answer.
+ * A semaphore caps in-flight calls, so that with virtual threads the number of
+ * concurrent chats is no longer what bounds the load on the upstream API.
+ */
+@Service
+public class AiCompletionClient {
+
+    private static final Logger log = LoggerFactory.getLogger(AiCompletionClient.class);
+
+    private static final String SYSTEM_PROMPT = """
+            You are "Neural Core", a sophisticated AI assistant designed for deep document analysis and reasoning.
+            You have access to a vast context of provided documents.
+
+            CRITICAL RULES:
+            1. NO EMOJIS: Never use emojis. Instead, use clean typography, bold headers, and structured lists for emphasis.
+            2. BASE YOUR ANSWERS ONLY ON THE PROVIDED DOCUMENT CONTEXT.
+            3. If the context doesn't contain the answer, state that clearly but try to offer relevant insights from the documents if possible.
+            4. USE YOUR ADVANCED REASONING: Analyze complex relationships across multiple document chunks.
+            5. CITATIONS: Always cite the document name and section when providing information.
+            6. LANGUAGE: Respond in the same language as the user.
+            7. FORMATTING: Use clean Markdown (headers, tables, bold text) for technical or structured data.
+            8. EXPLAIN YOUR LOGIC: If a query is complex, briefly explain how you arrived at the answer based on the documents.
+            9. AESTHETICS: Ensure the output looks professional, high-end, and structured. Use horizontal lines (---) to separate sections if helpful.
+            """;
+
+    // Prompt history: at most this many messages (the last being the current question),
+    // each cut to HISTORY_MESSAGE_CHARS
+    static final int MAX_HISTORY_MESSAGES = 20;
+    static final int HISTORY_MESSAGE_CHARS = 300;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4; // Role and delimiters per chat message
+
+    private final AiConfig config;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore permits;
+    private final MeterRegistry meterRegistry;
+    private final Timer permitWait;
+
+    public AiCompletionClient(AiConfig config, RestTemplate restTemplate, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.restTemplate = restTemplate;
+        this.permits = new Semaphore(Math.max(1, config.getMaxConcurrentRequests()), true);
+        this.meterRegistry = meterRegistry;
+        this.permitWait = Timer.builder("ai.client.permit.wait")
+                .description("Time spent waiting for a free AI request slot")
+                .register(meterRegistry);
+    }
+
+    public String complete(String question, String context, List<Conversation.Message> history, boolean reducedMode) {
+        acquirePermit();
+        long start = System.nanoTime();
+        String result = null;
+        try {
+            HttpEntity<Map<String, Object>> entity = buildRequest(question, context, history, reducedMode, false);
+            ResponseEntity<String> response = restTemplate.exchange(completionsUrl(), HttpMethod.POST, entity, String.class);
+            result = parseAnswer(response.getBody());
+            return result;
+
+        } catch (HttpStatusCodeException e) {
+            throw httpError(e);
+        } catch (RestClientException e) {
+            // Connection failures and timeouts
+            log.error("Failed to generate answer: {}", e.getMessage(), e);
+            throw new AiRetryPolicy.RetryableException(e.getMessage(), 0, e);
+        } finally {
+            permits.release();
+            recordCall("complete", result, start);
+        }
+    }
+
+    /**
+     * Streams the answer, passing every content delta to {@code onDelta}. When
+     * {@code cancelled} is set the upstream request is aborted, which closes the
+     * connection instead of reading the rest of the answer, the request slot is freed
+     * at once, and what was received up to then is returned.
+     * Once a delta has been forwarded a failure is no longer retryable; it is reported
+     * as {@link AiRetryPolicy.UnavailableException} and the caller keeps what it received.
+     */
+    public String stream(String question, String context, List<Conversation.Message> history, boolean reducedMode,
+                         Consumer<String> onDelta, Cancellation cancelled) {
+        acquirePermit();
+        long start = System.nanoTime();
+        String result = null;
+        StringBuilder answer = new StringBuilder();
+        AtomicBoolean permitHeld = new AtomicBoolean(true);
+        AtomicReference<HttpUriRequestBase> upstream = new AtomicReference<>();
+        Runnable unregister = cancelled.onCancel(() -> {
+            HttpUriRequestBase request = upstream.get();
+            if (request != null) request.abort();
+            if (permitHeld.compareAndSet(true, false)) permits.release();
+        });
+        try {
+            HttpEntity<Map<String, Object>> entity = buildRequest(question, context, history, reducedMode, true);
+            AbortableRequestFactory.capturing(request -> {
+                upstream.set(request);
+                if (cancelled.isCancelled()) request.abort(); // Cancelled before the request existed
+            }, () -> restTemplate.execute(completionsUrl(), HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().putAll(entity.getHeaders());
+                        objectMapper.writeValue(request.getBody(), entity.getBody());
+                    },
+                    response -> {
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                        String line;
+                        while (!cancelled.getAsBoolean() && (line = reader.readLine()) != null) {
+                            // Server-sent events: "data: {json}" lines, ending with "data: [DONE]"
+                            if (!line.startsWith("data:")) continue;
+                            String data = line.substring(5).trim();
+                            if (data.equals("[DONE]")) break;
+                            if (data.isEmpty()) continue;
+
+                            JsonNode delta = parseJson(data).path("choices").path(0).path("delta").path("content");
+                            if (delta.isTextual() && !delta.asText().isEmpty()) {
+                                answer.append(delta.asText());
+                                onDelta.accept(delta.asText());
+                            }
+                        }
+                        return null;
+                    }));
+            result = answer.toString();
+            return result;
+
+        } catch (HttpStatusCodeException e) {
+            throw httpError(e);
+        } catch (RestClientException e) {
+            if (cancelled.isCancelled()) {
+                // Our own abort
+                result = answer.toString();
+                return result;
+            }
+            // Connection failures, timeouts and reads that broke off
+            log.error("Failed to stream answer: {}", e.getMessage(), e);
+            if (answer.isEmpty()) throw new AiRetryPolicy.RetryableException(e.getMessage(), 0, e);
+            throw new AiRetryPolicy.UnavailableException("Sorry, the answer was interrupted. Please try again.");
+        } finally {
+            unregister.run();
+            if (permitHeld.compareAndSet(true, false)) permits.release();
+            recordCall("stream", result, start);
+        }
+    }
+
+    private String parseAnswer(String body) {
+        JsonNode content = parseJson(body).path("choices").path(0).path("message").path("content");
+        if (!content.isTextual()) throw malformedResponse(body);
+        return content.asText();
+    }
+
+    // A body the API should never send; retrying would not make it valid
+    private JsonNode parseJson(String body) {
+        if (body == null) throw malformedResponse(null);
+        try {
+            return objectMapper.readTree(body);
+        } catch (JsonProcessingException e) {
+            throw malformedResponse(body);
+        }
+    }
+
+    private static AiRetryPolicy.UnavailableException malformedResponse(String body) {
+        log.error("Malformed AI API response: {}", body);
+        return new AiRetryPolicy.UnavailableException("Sorry, the AI service sent an invalid response. Please try again.");
+    }
+
+    // Per-call latency, tagged by mode and by whether the call produced an answer
+    private void recordCall(String mode, String result, long startNanos) {
+        Timer.builder("ai.client.requests")
+                .description("Calls to the AI chat completions API")
+                .tag("mode", mode)
+                .tag("outcome", result != null ? "success" : "failure")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void acquirePermit() {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.getAcquireTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AiRetryPolicy.LocalRetryableException("Interrupted while waiting for an AI request slot", e);
+        }
+        permitWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            log.warn("No free AI request slot after {} ms ({} in flight)",
+                    config.getAcquireTimeoutMs(), config.getMaxConcurrentRequests());
+            throw new AiRetryPolicy.LocalRetryableException("No free AI request slot", null);
+        }
+    }
+
+    private String completionsUrl() {
+        return config.getApiBaseUrl() + "/chat/completions";
+    }
+
+    /**
+     * Estimated tokens of everything in the prompt except the document context, so
+     * the caller knows how much of the budget is left for documents.
+     */
+    public int promptOverheadTokens(String question, List<Conversation.Message> history, boolean reducedMode) {
+        int tokens = TokenEstimator.estimate(SYSTEM_PROMPT) + MESSAGE_OVERHEAD_TOKENS;
+        for (Map<String, String> message : historyMessages(history, reducedMode)) {
+            tokens += TokenEstimator.estimate(message.get("content")) + MESSAGE_OVERHEAD_TOKENS;
+        }
+        return tokens + TokenEstimator.estimate(contextPrompt(question, "")) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    private HttpEntity<Map<String, Object>> buildRequest(String question, String context, List<Conversation.Message> history,
+                                                         boolean reducedMode, boolean stream) {
+        // Build messages array (OpenAI format)
+        List<Map<String, String>> messages = new ArrayList<>();
+        messages.add(Map.of("role", "system", "content", SYSTEM_PROMPT));
+        messages.addAll(historyMessages(history, reducedMode));
+        messages.add(Map.of("role", "user", "content", userPrompt(question, context)));
+
+        // Build request body (OpenAI-compatible format)
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", config.getChatModel());
+        requestBody.put("messages", messages);
+        requestBody.put("temperature", 0.5); // Lower temperature for more consistent reasoning
+        requestBody.put("max_tokens", reducedMode ? 2000 : 4096);
+        if (stream) requestBody.put("stream", true);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(config.getApiKey());
+        return new HttpEntity<>(requestBody, headers);
+    }
+
+    private static String userPrompt(String question, String context) {
+        return context.isBlank()
+                ? "No documents have been uploaded yet. Please answer this general question:\n\n" + question
+                : contextPrompt(question, context);
+    }
+
+    private static String contextPrompt(String question, String context) {
+        return "Based on the following document context, answer the question.\n\n"
+                + "DOCUMENT CONTEXT:\n" + context + "\n\nQUESTION: " + question;
+    }
+
+    // Recent conversation history, without the current question (the last message)
+    private static List<Map<String, String>> historyMessages(List<Conversation.Message> history, boolean reducedMode) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        int maxHistory = reducedMode ? 5 : MAX_HISTORY_MESSAGES;
+        int startIdx = Math.max(0, history.size() - maxHistory);
+        for (int i = startIdx; i < history.size() - 1; i++) {
+            Conversation.Message msg = history.get(i);
+            // Truncate very long messages in history to save tokens
+            String content = msg.getContent();
+            if (content != null && content.length() > HISTORY_MESSAGE_CHARS) {
+                content = content.substring(0, HISTORY_MESSAGE_CHARS) + "...";
+            }
+            messages.add(Map.of("role", msg.getRole(), "content", content != null ? content : ""));
+        }
+        return messages;
+    }
+
+    private RuntimeException httpError(HttpStatusCodeException e) {
+        int status = e.getStatusCode().value();
+        log.error("AI API error - Status: {} Body: {}", status, e.getResponseBodyAsString());
+        if (status == 408 || status == 429 || status >= 500) {
+            // Timeout, rate limit or overloaded — retry, after Retry-After if the upstream sent one
+            long retryAfterMs = e.getResponseHeaders() != null
+                    ? AiRetryPolicy.parseRetryAfter(e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER))
+                    : 0;
+            return new AiRetryPolicy.RetryableException("HTTP " + status, retryAfterMs, e);
+        }
+        if (status == 413 || e.getResponseBodyAsString().contains("too large")) {
+            // Too large — retry with reduced context
+            return new AiRetryPolicy.LocalRetryableException("HTTP " + status + " (context too large)", e);
+        }
+        return new AiRetryPolicy.UnavailableException("Sorry, I encountered an error (" + status + "). Please try again.");
+    }
+}
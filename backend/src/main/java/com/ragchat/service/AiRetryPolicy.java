@@ -0,0 +1,185 @@
+package com.ragchat.service;
+
+import com.ragchat.config.AiConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Retries AI API calls with exponential backoff and full jitter, honouring the
+ * upstream's Retry-After, within a per-request deadline. A circuit breaker opens
+ * after consecutive failures so callers fail fast while the upstream is down, then
+ * lets a single trial call through once the open period has passed.
+ */
+@Component
+public class AiRetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(AiRetryPolicy.class);
+
+    /** A failure worth retrying, optionally with the delay the upstream asked for. */
+    public static class RetryableException extends RuntimeException {
+        private final long retryAfterMs;
+
+        public RetryableException(String message, long retryAfterMs, Throwable cause) {
+            super(message, cause);
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public long getRetryAfterMs() { return retryAfterMs; }
+    }
+
+    /**
+     * A failure worth retrying that says nothing about the upstream's health: no free
+     * local request slot, or a request too large for the model. Retried, but never
+     * counted towards opening the circuit.
+     */
+    public static class LocalRetryableException extends RetryableException {
+        public LocalRetryableException(String message, Throwable cause) {
+            super(message, 0, cause);
+        }
+    }
+
+    /** Thrown when no answer can be produced; the message is meant for the user. */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final AiConfig config;
+    private final Counter retries;
+    private final Counter giveUps;
+    private final Counter circuitRejections;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openUntilNanos; // 0 while the circuit is closed
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+
+    public AiRetryPolicy(AiConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.retries = Counter.builder("ai.client.retries").description("Retried AI API calls").register(meterRegistry);
+        this.giveUps = Counter.builder("ai.client.giveups").description("AI requests that ran out of attempts or deadline").register(meterRegistry);
+        this.circuitRejections = Counter.builder("ai.client.circuit.rejections").description("AI requests rejected by the open circuit").register(meterRegistry);
+        Gauge.builder("ai.client.circuit.open", this, p -> p.openUntilNanos != 0 ? 1 : 0).register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code call} with the attempt number (0 for the first try) until it returns
+     * or throws something other than {@link RetryableException}. Returns null if
+     * {@code cancelled} turns true while waiting.
+     *
+     * @throws UnavailableException when the circuit is open or retries are exhausted
+     */
+    public String execute(IntFunction<String> call, BooleanSupplier cancelled) {
+        long deadline = System.nanoTime() + Duration.ofMillis(config.getRequestDeadlineMs()).toNanos();
+        int maxAttempts = Math.max(1, config.getRetryMaxAttempts());
+
+        for (int attempt = 0; ; attempt++) {
+            if (!allowRequest()) {
+                circuitRejections.increment();
+                throw new UnavailableException("Sorry, the AI service is currently unavailable. Please try again in a minute.");
+            }
+
+            RetryableException failure;
+            try {
+                String result = call.apply(attempt);
+                onSuccess();
+                return result;
+            } catch (LocalRetryableException e) {
+                trialInFlight.set(false); // Not an upstream failure; let the next call be the trial
+                failure = e;
+            } catch (RetryableException e) {
+                onFailure();
+                failure = e;
+            } catch (RuntimeException e) {
+                trialInFlight.set(false); // Not an upstream failure; let the next call be the trial
+                throw e;
+            }
+
+            long delayMs = backoffMs(attempt, failure.getRetryAfterMs());
+            boolean outOfTime = System.nanoTime() + Duration.ofMillis(delayMs).toNanos() > deadline;
+            if (attempt + 1 >= maxAttempts || outOfTime) {
+                giveUps.increment();
+                log.warn("Giving up on AI request after {} attempts: {}", attempt + 1, failure.getMessage());
+                throw new UnavailableException("Sorry, the AI service is temporarily overloaded. Please try again in a few seconds.");
+            }
+
+            retries.increment();
+            log.info("AI request failed ({}), retrying in {} ms", failure.getMessage(), delayMs);
+            if (cancelled.getAsBoolean()) return null;
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (cancelled.getAsBoolean()) return null;
+        }
+    }
+
+    // Full jitter: uniform in [0, min(max, base * 2^attempt)]. A Retry-After is a floor,
+    // with a little jitter on top so clients told the same time do not return together
+    private long backoffMs(int attempt, long retryAfterMs) {
+        long base = Math.max(1, config.getRetryBaseDelayMs());
+        if (retryAfterMs > 0) {
+            return retryAfterMs + ThreadLocalRandom.current().nextLong(base + 1);
+        }
+        long ceiling = Math.min(config.getRetryMaxDelayMs(), base << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Parses a Retry-After header value (delay in seconds or an HTTP date) into
+     * milliseconds; 0 when absent or unparseable.
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+            } catch (RuntimeException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    // Closed: always. Open: never until the open period ends. Then half-open: one trial call
+    private boolean allowRequest() {
+        long openUntil = openUntilNanos;
+        if (openUntil == 0) return true;
+        if (System.nanoTime() < openUntil) return false;
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (openUntilNanos != 0) log.info("AI circuit closed");
+        openUntilNanos = 0;
+        trialInFlight.set(false);
+    }
+
+    private void onFailure() {
+        boolean trialFailed = trialInFlight.getAndSet(false);
+        if (trialFailed || consecutiveFailures.incrementAndGet() >= config.getCircuitFailureThreshold()) {
+            long openUntil = System.nanoTime() + Duration.ofMillis(config.getCircuitOpenMs()).toNanos();
+            openUntilNanos = openUntil != 0 ? openUntil : 1;
+            log.warn("AI circuit open for {} ms after {} consecutive failures",
+                    config.getCircuitOpenMs(), consecutiveFailures.get());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.ragchat.service;
+
+import com.ragchat.model.Conversation;
+import com.ragchat.model.DocumentInfo;
+import com.ragchat.repository.DocumentInfoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches generated answers per document set. The scope is the fingerprint of the
+ * conversation's documents (their content hashes), so every conversation over the
+ * same files shares entries, across users. A lookup hits on an exact match of the
+ * normalized question, or on the most similar cached question in the same scope
+ * when its embedding similarity reaches the threshold. A follow-up question ("and
+ * what about it?") only makes sense with the turns before it, so for those the
+ * history window is part of the scope too; standalone questions ignore the history.
+ * Entries expire after a TTL and the least recently used are evicted past the size
+ * bound. The document set is read for every turn, so a changed set has a different
+ * scope at once and its old entries can never be served for it.
+ */
+@Component
+public class AnswerCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AnswerCache.class);
+
+    @Value("${rag.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.answer-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${rag.answer-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    // Cosine similarity between question embeddings needed for a near-duplicate hit
+    @Value("${rag.answer-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    private static class CachedAnswer {
+        final String scope;
+        final float[] embedding;
+        final String answer;
+        final long createdNanos;
+        final long generationNanos; // What the original LLM call took, i.e. what a hit saves
+
+        CachedAnswer(String scope, float[] embedding, String answer, long generationNanos) {
+            this.scope = scope;
+            this.embedding = embedding;
+            this.answer = answer;
+            this.createdNanos = System.nanoTime();
+            this.generationNanos = generationNanos;
+        }
+    }
+
+    // Words that point back at earlier turns; a question containing one is a follow-up
+    private static final Set<String> REFERRING_WORDS = Set.of(
+            "it", "its", "this", "that", "these", "those", "they", "them", "their",
+            "he", "she", "him", "her", "above", "previous", "earlier", "same", "again", "more", "else",
+            "это", "этот", "эта", "эти", "этого", "этом", "он", "она", "оно", "они", "его", "её", "ее",
+            "их", "ему", "ей", "им", "там", "выше", "ещё", "еще", "подробнее", "тоже", "также");
+    // Openings that continue the previous turn ("and the price?", "what about the second one?")
+    private static final Set<String> CONTINUING_OPENINGS = Set.of(
+            "and", "but", "so", "also", "then", "what about", "how about", "и", "а", "но", "тогда", "а что");
+    // Questions this short ("why?", "and the second one?") lean on the history as well
+    private static final int FOLLOW_UP_MAX_WORDS = 3;
+
+    private final DocumentInfoRepository documentInfoRepository;
+
+    // scope + '\n' + normalized question -> answer, in access order for LRU eviction
+    private final LinkedHashMap<String, CachedAnswer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Set<String>> keysByScope = new HashMap<>();
+
+    private final Counter exactHits;
+    private final Counter similarHits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    public AnswerCache(DocumentInfoRepository documentInfoRepository, MeterRegistry meterRegistry) {
+        this.documentInfoRepository = documentInfoRepository;
+        this.exactHits = Counter.builder("rag.answer.cache.requests").tag("result", "exact").register(meterRegistry);
+        this.similarHits = Counter.builder("rag.answer.cache.requests").tag("result", "similar").register(meterRegistry);
+        this.misses = Counter.builder("rag.answer.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.savedLatency = Timer.builder("rag.answer.cache.saved")
+                .description("Generation time of the original answer, recorded on every cache hit")
+                .register(meterRegistry);
+        Gauge.builder("rag.answer.cache.size", this, cache -> cache.size()).register(meterRegistry);
+    }
+
+    /**
+     * Scope of a turn, or null when there is nothing to cache against: no documents,
+     * or a document still being ingested (its chunks are already searchable, so the
+     * set is changing). The history is the window sent with the question; it only
+     * counts for follow-up questions, and its last message is the question itself.
+     */
+    public String scope(String conversationId, String question, List<Conversation.Message> history) {
+        if (!enabled) return null;
+        String documents = fingerprint(conversationId);
+        if (documents == null) return null;
+        if (history.size() <= 1 || !isFollowUp(question)) return documents;
+
+        StringBuilder scope = new StringBuilder(documents);
+        for (int i = 0; i < history.size() - 1; i++) {
+            Conversation.Message message = history.get(i);
+            scope.append('\n').append(message.getRole()).append(':')
+                    .append(message.getContent() != null ? message.getContent().replace("\n", "\n ") : "");
+        }
+        return sha256(scope.toString());
+    }
+
+    static boolean isFollowUp(String question) {
+        String[] words = normalize(question).split("[^\\p{L}\\p{N}]+");
+        if (words.length > 1 && CONTINUING_OPENINGS.contains(words[0] + " " + words[1])) return true;
+        if (words.length > 0 && CONTINUING_OPENINGS.contains(words[0])) return true;
+        int count = 0;
+        for (String word : words) {
+            if (word.isEmpty()) continue;
+            if (REFERRING_WORDS.contains(word)) return true;
+            count++;
+        }
+        return count <= FOLLOW_UP_MAX_WORDS;
+    }
+
+    // Read on every turn: one indexed query, and never stale after an upload or delete
+    private String fingerprint(String conversationId) {
+        List<DocumentInfo> documents = documentInfoRepository.findByConversationId(conversationId);
+        List<String> parts = new ArrayList<>();
+        for (DocumentInfo document : documents) {
+            if ("PROCESSING".equals(document.getStatus())) return null;
+            if ("READY".equals(document.getStatus())) {
+                // Documents uploaded before content hashing was added fall back to their id
+                parts.add(document.getContentHash() != null ? document.getContentHash() : document.getId());
+            }
+        }
+        if (parts.isEmpty()) return null;
+
+        Collections.sort(parts);
+        return sha256(String.join(",", parts));
+    }
+
+    public String lookup(String scope, String question, double[] questionEmbedding) {
+        String key = key(scope, question);
+        long now = System.nanoTime();
+        CachedAnswer hit;
+        boolean exact;
+        synchronized (entries) {
+            hit = entries.get(key);
+            if (hit != null && expired(hit, now)) {
+                remove(key);
+                hit = null;
+            }
+            exact = hit != null;
+            if (hit == null && questionEmbedding != null) {
+                hit = mostSimilar(scope, toFloat(questionEmbedding), now);
+            }
+        }
+
+        if (hit == null) {
+            misses.increment();
+            return null;
+        }
+        (exact ? exactHits : similarHits).increment();
+        savedLatency.record(hit.generationNanos, TimeUnit.NANOSECONDS);
+        log.debug("Answer cache {} hit for question: {}", exact ? "exact" : "similar", question);
+        return hit.answer;
+    }
+
+    public void put(String scope, String question, double[] questionEmbedding, String answer, long generationNanos) {
+        String key = key(scope, question);
+        CachedAnswer entry = new CachedAnswer(scope,
+                questionEmbedding != null ? toFloat(questionEmbedding) : null, answer, generationNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+            keysByScope.computeIfAbsent(scope, f -> new HashSet<>()).add(key);
+            Iterator<Map.Entry<String, CachedAnswer>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                Map.Entry<String, CachedAnswer> e = eldest.next();
+                eldest.remove();
+                removeFromScope(e.getKey(), e.getValue().scope);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Linear scan over the same scope's entries; caller holds the entries lock
+    private CachedAnswer mostSimilar(String scope, float[] query, long now) {
+        Set<String> keys = keysByScope.get(scope);
+        if (keys == null) return null;
+
+        String bestKey = null;
+        double bestScore = similarityThreshold;
+        for (String key : new ArrayList<>(keys)) {
+            CachedAnswer candidate = entries.get(key);
+            if (candidate == null) continue;
+            if (expired(candidate, now)) {
+                remove(key);
+                continue;
+            }
+            if (candidate.embedding == null || candidate.embedding.length != query.length) continue;
+            double score = 0;
+            for (int i = 0; i < query.length; i++) score += query[i] * candidate.embedding[i];
+            if (score >= bestScore) {
+                bestScore = score;
+                bestKey = key;
+            }
+        }
+        return bestKey != null ? entries.get(bestKey) : null;
+    }
+
+    private boolean expired(CachedAnswer entry, long now) {
+        return now - entry.createdNanos > TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+
+    private void remove(String key) {
+        CachedAnswer removed = entries.remove(key);
+        if (removed != null) removeFromScope(key, removed.scope);
+    }
+
+    private void removeFromScope(String key, String scope) {
+        Set<String> keys = keysByScope.get(scope);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) keysByScope.remove(scope);
+        }
+    }
+
+    private static String key(String scope, String question) {
+        return scope + '\n' + normalize(question);
+    }
+
+    // Case, surrounding/repeated whitespace and trailing punctuation do not change the question
+    private static String normalize(String question) {
+        String normalized = question.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+        int end = normalized.length();
+        while (end > 0 && ".?!".indexOf(normalized.charAt(end - 1)) >= 0) end--;
+        return normalized.substring(0, end).trim();
+    }
+
+    // Embeddings come L2-normalized from EmbeddingService, so the dot product is the cosine
+    private static float[] toFloat(double[] vector) {
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) result[i] = (float) vector[i];
+        return result;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
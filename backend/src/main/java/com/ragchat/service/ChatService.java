@@ -1,52 +1,232 @@
 package com.ragchat.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ragchat.config.AiConfig;
+import com.ragchat.dto.ConversationSummary;
+import com.ragchat.dto.CursorPage;
 import com.ragchat.model.ChatRequest;
 import com.ragchat.model.ChatResponse;
 import com.ragchat.model.Conversation;
 import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
 import com.ragchat.repository.ConversationRepository;
 import com.ragchat.repository.MessageRepository;
+import com.ragchat.util.Cancellation;
+import com.ragchat.util.PageCursor;
+import com.ragchat.util.SnippetExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 @Service
 public class ChatService {
 
     private static final Logger log = LoggerFactory.getLogger(ChatService.class);
+    private static final int PREVIEW_LENGTH = 120; // Characters of the last message shown in the list
+
+    @Value("${rag.paging.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${rag.paging.max-size:200}")
+    private int maxPageSize;
 
     private final AiConfig config;
-    private final RestTemplate restTemplate;
+    private final AiCompletionClient aiClient;
+    private final AiRetryPolicy retryPolicy;
+    private final AnswerCache answerCache;
+    private final ContextPacker contextPacker;
+    private final PassageMerger passageMerger;
     private final EmbeddingService embeddingService;
     private final VectorStoreService vectorStoreService;
     private final DocumentService documentService;
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService streamExecutor;
+    private final ThreadPoolExecutor snippetExecutor;
+    private final Timer sourcesTimer;
 
-    public ChatService(AiConfig config, RestTemplate restTemplate,
+    // Snippets not done within this time after the answer fall back to the chunk start
+    @Value("${rag.snippets.timeout-ms:200}")
+    private long snippetTimeoutMs;
+
+    public ChatService(AiConfig config, AiCompletionClient aiClient, AiRetryPolicy retryPolicy, AnswerCache answerCache,
+                       ContextPacker contextPacker,
+                       PassageMerger passageMerger,
                        EmbeddingService embeddingService, VectorStoreService vectorStoreService,
                        DocumentService documentService,
-                       ConversationRepository conversationRepository, MessageRepository messageRepository) {
+                       ConversationRepository conversationRepository, MessageRepository messageRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${rag.snippets.threads:0}") int snippetThreads,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.config = config;
-        this.restTemplate = restTemplate;
+        this.aiClient = aiClient;
+        this.retryPolicy = retryPolicy;
+        this.answerCache = answerCache;
+        this.contextPacker = contextPacker;
+        this.passageMerger = passageMerger;
         this.embeddingService = embeddingService;
         this.vectorStoreService = vectorStoreService;
         this.documentService = documentService;
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
+        this.sourcesTimer = Timer.builder("rag.sources.build")
+                .description("Time from a finished answer to its source references")
+                .register(meterRegistry);
+
+        // CPU-bound and short: a small pool with a bounded queue; when it is full a chunk
+        // gets the fallback snippet rather than running on the request thread, outside the timeout
+        int snippetPoolSize = snippetThreads > 0 ? snippetThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger snippetThreadCount = new AtomicInteger();
+        this.snippetExecutor = new ThreadPoolExecutor(snippetPoolSize, snippetPoolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(snippetPoolSize * 64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "snippets-" + snippetThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        if (virtualThreads) {
+            // Streams mostly wait on the AI API; concurrency is bounded by its limiter instead
+            this.streamExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-stream-", 1).factory());
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, config.getStreamThreads());
+        this.streamExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getStreamQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
     }
 
     public ChatResponse chat(ChatRequest request, String userId) {
+        ChatTurn turn = prepareTurn(request, userId);
+
+        // Generate Answer FIRST so we can use it for smart snippets
+        String answer = cachedAnswer(turn);
+        if (answer == null) {
+            answer = generateAnswerWithRetry(turn,
+                    (ctx, reduced) -> aiClient.complete(turn.question, ctx, turn.history, reduced), () -> false);
+        }
+
+        List<ChatResponse.SourceReference> sources = completeTurn(turn, answer);
+
+        ChatResponse response = new ChatResponse();
+        response.setAnswer(answer);
+        response.setConversationId(turn.conversationId);
+        response.setSources(sources);
+        return response;
+    }
+
+    /**
+     * Streams the answer as server-sent events: "meta" with the conversation id, a
+     * "delta" per piece of generated text, then "sources" and "done" (or "error").
+     * The assistant message is saved when the answer is complete, or with the text
+     * generated so far when the client disconnects. A stream whose client left while it
+     * was still queued does no work, and one cancelled before any text was generated
+     * removes its question again.
+     *
+     * @throws RejectedExecutionException when all stream threads are busy and the queue is full
+     */
+    public SseEmitter streamChat(ChatRequest request, String userId) {
+        SseEmitter emitter = new SseEmitter(config.getStreamTimeoutMs());
+        Cancellation cancelled = new Cancellation();
+        emitter.onTimeout(cancelled::cancel);
+        emitter.onError(e -> cancelled.cancel());
+        emitter.onCompletion(cancelled::cancel);
+
+        streamExecutor.execute(() -> {
+            if (cancelled.isCancelled()) return; // Timed out or disconnected while queued
+            try {
+                ChatTurn turn = prepareTurn(request, userId);
+                sendEvent(emitter, "meta", Map.of("conversationId", turn.conversationId), cancelled);
+
+                StringBuilder streamed = new StringBuilder();
+                String answer = cachedAnswer(turn);
+                if (answer == null) {
+                    answer = generateAnswerWithRetry(turn,
+                            (ctx, reduced) -> aiClient.stream(turn.question, ctx, turn.history, reduced, delta -> {
+                                streamed.append(delta);
+                                sendEvent(emitter, "delta", Map.of("content", delta), cancelled);
+                            }, cancelled),
+                            cancelled);
+                }
+                if (streamed.isEmpty()) {
+                    // Cached answer, or error text that never came from the stream
+                    if (!answer.isEmpty()) sendEvent(emitter, "delta", Map.of("content", answer), cancelled);
+                } else {
+                    answer = streamed.toString(); // Keep what the client saw if the stream broke off
+                }
+
+                if (cancelled.isCancelled() && answer.isEmpty()) {
+                    messageRepository.delete(turn.userMessage); // Nothing worth keeping, not even an unanswered question
+                    return;
+                }
+                List<ChatResponse.SourceReference> sources = completeTurn(turn, answer);
+                sendEvent(emitter, "sources", sources, cancelled);
+                sendEvent(emitter, "done", Map.of("conversationId", turn.conversationId), cancelled);
+                emitter.complete();
+            } catch (Exception e) {
+                log.error("Streaming chat failed: {}", e.getMessage(), e);
+                sendEvent(emitter, "error", Map.of("error", e.getMessage() != null ? e.getMessage() : "unknown"), cancelled);
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data, Cancellation cancelled) {
+        if (cancelled.isCancelled()) return;
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            cancelled.cancel(); // Client went away
+        }
+    }
+
+    /** Everything gathered for one question before the model is called. */
+    private static class ChatTurn {
+        Conversation conversation;
+        String conversationId;
+        String question;
+        com.ragchat.model.MessageEntity userMessage;
+        List<ScoredChunk> relevantChunks;
+        String context;
+        List<Conversation.Message> history;
+        double[] queryEmbedding; // Null when the conversation has no documents
+        String cacheScope; // Answer cache scope; null when answers are not cached
+        String reducedContext; // Packed on the first retry
+    }
+
+    private ChatTurn prepareTurn(ChatRequest request, String userId) {
         String conversationId = request.getConversationId();
         if (conversationId == null || conversationId.isBlank()) {
             conversationId = UUID.randomUUID().toString();
@@ -73,105 +253,91 @@ public class ChatService {
         messageRepository.save(userMsgEntity);
 
         // Vector Search
-        List<DocumentChunk> relevantChunks = Collections.emptyList();
-        Map<String, Double> scores = Collections.emptyMap();
-        int chunkCount = vectorStoreService.getChunkCount(conversationId);
-
-        if (chunkCount > 0) {
-            double[] queryEmbedding = embeddingService.embed(request.getMessage());
-            relevantChunks = vectorStoreService.search(conversationId, queryEmbedding);
-            scores = vectorStoreService.searchWithScores(conversationId, queryEmbedding);
+        List<ScoredChunk> relevantChunks = Collections.emptyList();
+        double[] queryEmbedding = null;
+        if (vectorStoreService.getChunkCount(conversationId) > 0) {
+            queryEmbedding = embeddingService.embedQuery(request.getMessage());
+            // Neighbouring windows of one section become one passage, their shared overlap sent once
+            relevantChunks = passageMerger.merge(
+                    vectorStoreService.search(conversationId, request.getMessage(), queryEmbedding));
         }
 
-        final Map<String, Double> finalScores = scores;
-
-        // Limit context to ~40000 chars to leverage Claude Opus's large context window
-        StringBuilder contextBuilder = new StringBuilder();
-        for (DocumentChunk chunk : relevantChunks) {
-            String entry = String.format("[Document: %s]\n%s", chunk.getDocumentName(), chunk.getContent());
-            
-            if (contextBuilder.length() + entry.length() > 40000) {
-                // If context is still empty (first chunk is too big), truncate and add it
-                if (contextBuilder.isEmpty()) {
-                    contextBuilder.append(entry.substring(0, Math.min(entry.length(), 40000)));
-                }
-                break; // Stop adding more chunks
-            }
-            
-            if (!contextBuilder.isEmpty()) contextBuilder.append("\n\n---\n\n");
-            contextBuilder.append(entry);
+        // Fetch history for context: only the window the prompt uses, whatever the conversation length.
+        // One char over the cut-off is kept so the prompt still marks truncated messages
+        List<MessageRepository.HistoryEntry> recent = messageRepository.findRecentHistory(conversationId,
+                AiCompletionClient.HISTORY_MESSAGE_CHARS + 1, PageRequest.ofSize(AiCompletionClient.MAX_HISTORY_MESSAGES));
+        List<Conversation.Message> history = new ArrayList<>(recent.size());
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            history.add(new Conversation.Message(recent.get(i).getRole(), recent.get(i).getContent(), null, null));
         }
-        String context = contextBuilder.toString();
 
-        // Fetch history for context
-        List<com.ragchat.model.MessageEntity> historyEntities = messageRepository.findByConversationIdOrderByTimestampAsc(conversationId);
-        List<Conversation.Message> history = historyEntities.stream()
-                .map(e -> new Conversation.Message(e.getRole(), e.getContent(), e.getSources(), e.getTimestamp()))
-                .toList();
+        // Documents get what the model's prompt budget leaves after system prompt, history and question
+        int contextBudget = config.promptTokenBudgetForChatModel()
+                - aiClient.promptOverheadTokens(request.getMessage(), history, false);
+        ContextPacker.Packed packed = contextPacker.pack(relevantChunks, contextBudget);
+
+        ChatTurn turn = new ChatTurn();
+        turn.conversation = conversation;
+        turn.conversationId = conversationId;
+        turn.question = request.getMessage();
+        turn.userMessage = userMsgEntity;
+        turn.relevantChunks = packed.getChunks();
+        turn.context = packed.getContext();
+        turn.history = history;
+        turn.queryEmbedding = queryEmbedding;
+        turn.cacheScope = answerCache.scope(conversationId, turn.question, history);
+        return turn;
+    }
 
-        // Generate Answer FIRST so we can use it for smart snippets
-        String answer = generateAnswerWithRetry(request.getMessage(), context, history);
-
-        List<ChatResponse.SourceReference> sources = relevantChunks.stream()
-                .map(chunk -> {
-                    ChatResponse.SourceReference ref = new ChatResponse.SourceReference();
-                    ref.setDocumentName(chunk.getDocumentName());
-                    ref.setSection(chunk.getSection()); // Include section in source
-                    
-                    // Generate smart snippet using BOTH query and the generated answer
-                    String searchContext = request.getMessage() + " " + answer;
-                    String snippet = generateSmartSnippet(chunk.getContent(), searchContext);
-                    ref.setSnippet(snippet);
-                    
-                    ref.setRelevanceScore(finalScores.getOrDefault(chunk.getId(), 0.0));
-                    return ref;
-                })
-                .toList();
+    // Builds the source references for the answer and saves the assistant message
+    private List<ChatResponse.SourceReference> completeTurn(ChatTurn turn, String answer) {
+        List<ChatResponse.SourceReference> sources = buildSources(turn, answer);
 
         // Save Assistant Message
         com.ragchat.model.MessageEntity assistantMsgEntity = new com.ragchat.model.MessageEntity(
-                conversationId, "assistant", answer, sources, LocalDateTime.now()
+                turn.conversationId, "assistant", answer, sources, LocalDateTime.now()
         );
         messageRepository.save(assistantMsgEntity);
 
         // Update Conversation Timestamp
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
-
-        ChatResponse response = new ChatResponse();
-        response.setAnswer(answer);
-        response.setConversationId(conversationId);
-        response.setSources(sources);
-        return response;
+        turn.conversation.setUpdatedAt(LocalDateTime.now());
+        conversationRepository.save(turn.conversation);
+        return sources;
     }
 
-    public List<Conversation> getConversations(String userId) {
-        List<Conversation> convs = conversationRepository.findAllByUserIdOrderByUpdatedAtDesc(userId);
-        // Populate messages for each conversation so the frontend shows correct counts/previews
-        convs.forEach(c -> {
-            List<com.ragchat.model.MessageEntity> msgEntities = messageRepository.findByConversationIdOrderByTimestampAsc(c.getId());
-            List<Conversation.Message> messages = msgEntities.stream()
-                    .map(e -> new Conversation.Message(e.getRole(), e.getContent(), e.getSources(), e.getTimestamp()))
-                    .toList();
-            c.setMessages(messages);
-            
-            // Also populate documentIds for completeness if needed by frontend
-             List<String> docIds = documentService.getDocuments(c.getId()).stream()
-                    .map(com.ragchat.model.DocumentInfo::getId)
-                    .toList();
-            c.setDocumentIds(docIds);
-        });
-        return convs;
+    // Sidebar list: one query per page, no message bodies or sources
+    public CursorPage<ConversationSummary> getConversations(String userId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        List<ConversationRepository.SummaryRow> rows;
+        if (cursor == null) {
+            rows = conversationRepository.findSummariesByUserId(userId, PREVIEW_LENGTH, size + 1);
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            rows = conversationRepository.findSummariesByUserIdBefore(userId, after.getTimestamp(), after.getId(),
+                    PREVIEW_LENGTH, size + 1);
+        }
+
+        // One extra row tells whether there is a next page
+        boolean more = rows.size() > size;
+        if (more) rows = rows.subList(0, size);
+        List<ConversationSummary> items = rows.stream()
+                .map(row -> new ConversationSummary(row.getId(), row.getTitle(), row.getCreatedAt(), row.getUpdatedAt(),
+                        row.getMessageCount(), row.getLastMessage(),
+                        row.getDocumentIds() != null ? List.of(row.getDocumentIds().split(",")) : List.of()))
+                .toList();
+        ConversationRepository.SummaryRow last = more ? rows.get(rows.size() - 1) : null;
+        return new CursorPage<>(items, last != null ? new PageCursor(last.getUpdatedAt(), last.getId()).encode() : null);
     }
 
-    public Conversation getConversation(String id) {
+    /**
+     * The conversation with its latest {@code messageLimit} messages (oldest first);
+     * {@link Conversation#getMessagesCursor()} pages further back through {@link #getMessages}.
+     */
+    public Conversation getConversation(String id, Integer messageLimit) {
         return conversationRepository.findById(id).map(c -> {
-            // Populate Messages
-            List<com.ragchat.model.MessageEntity> msgEntities = messageRepository.findByConversationIdOrderByTimestampAsc(id);
-            List<Conversation.Message> messages = msgEntities.stream()
-                    .map(e -> new Conversation.Message(e.getRole(), e.getContent(), e.getSources(), e.getTimestamp()))
-                    .toList();
-            c.setMessages(messages);
+            CursorPage<Conversation.Message> latest = getMessages(id, null, null, messageLimit);
+            c.setMessages(latest.getItems());
+            c.setMessagesCursor(latest.getNextCursor());
 
             // Populate Document IDs
             List<String> docIds = documentService.getDocuments(id).stream()
@@ -183,11 +349,65 @@ public class ChatService {
         }).orElse(null);
     }
 
+    public boolean isOwner(String conversationId, String userId) {
+        return conversationRepository.existsByIdAndUserId(conversationId, userId);
+    }
+
+    /**
+     * A page of messages, always oldest first within the page. Without a cursor this
+     * is the latest page. With {@code before} it is the page preceding that cursor and
+     * the next cursor goes further back; with {@code after} it is the page following
+     * it and the next cursor goes forward.
+     */
+    public CursorPage<Conversation.Message> getMessages(String conversationId, String before, String after, Integer limit) {
+        int size = pageSize(limit);
+        Pageable page = PageRequest.ofSize(size + 1);
+        List<com.ragchat.model.MessageEntity> entities;
+        if (after != null) {
+            PageCursor cursor = PageCursor.decode(after);
+            entities = messageRepository.findPageAfter(conversationId, cursor.getTimestamp(), messageId(cursor), page);
+        } else if (before != null) {
+            PageCursor cursor = PageCursor.decode(before);
+            entities = messageRepository.findPageBefore(conversationId, cursor.getTimestamp(), messageId(cursor), page);
+        } else {
+            entities = messageRepository.findByConversationIdOrderByTimestampDescIdDesc(conversationId, page);
+        }
+
+        // One extra row tells whether there is a next page
+        String nextCursor = null;
+        if (entities.size() > size) {
+            entities = entities.subList(0, size);
+            com.ragchat.model.MessageEntity last = entities.get(size - 1);
+            nextCursor = new PageCursor(last.getTimestamp(), String.valueOf(last.getId())).encode();
+        }
+
+        List<Conversation.Message> messages = new ArrayList<>(entities.stream()
+                .map(e -> new Conversation.Message(e.getRole(), e.getContent(), e.getSourcesJson(), e.getTimestamp()))
+                .toList());
+        if (after == null) Collections.reverse(messages); // Fetched newest first
+        return new CursorPage<>(messages, nextCursor);
+    }
+
+    private static Long messageId(PageCursor cursor) {
+        try {
+            return Long.valueOf(cursor.getId());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private int pageSize(Integer requested) {
+        if (requested == null) return defaultPageSize;
+        return Math.max(1, Math.min(requested, maxPageSize));
+    }
+
     @Transactional
     public void deleteConversation(String id) {
         // Delete documents (and their chunks)
         documentService.getDocuments(id).forEach(doc -> documentService.deleteDocument(doc.getId()));
         
+        vectorStoreService.removeConversation(id);
+
         // Delete messages
         messageRepository.deleteByConversationId(id);
         
@@ -195,179 +415,97 @@ public class ChatService {
         conversationRepository.deleteById(id);
     }
 
-    private String generateSmartSnippet(String content, String query) {
-        if (content == null || content.isEmpty()) return "";
-        
-        String contentLower = content.toLowerCase();
-        // Extract keywords: words > 3 chars OR digits
-        List<String> keywords = Arrays.stream(query.toLowerCase().split("\\s+"))
-                .filter(w -> w.length() > 3 || w.matches(".*\\d.*"))
-                .distinct()
-                .toList();
-
-        if (keywords.isEmpty()) {
-            return content.length() > 150 ? content.substring(0, 150) + "..." : content;
-        }
-
-        // 1. Find all match positions for every keyword
-        List<Integer> matchIndices = new ArrayList<>();
-        for (String keyword : keywords) {
-            java.util.regex.Pattern p;
-            if (keyword.matches(".*\\d.*")) {
-                 // Strict number matching
-                 p = java.util.regex.Pattern.compile("(?<!\\d)" + java.util.regex.Pattern.quote(keyword) + "(?!\\d)");
-            } else {
-                 // Word matching
-                 p = java.util.regex.Pattern.compile(java.util.regex.Pattern.quote(keyword));
-            }
-            java.util.regex.Matcher m = p.matcher(contentLower);
-            while (m.find()) {
-                matchIndices.add(m.start());
+    /**
+     * One source reference per retrieved chunk. The keyword model (question plus
+     * answer) is built once and the snippets are extracted in parallel; any not
+     * finished within rag.snippets.timeout-ms, or not accepted by the full pool, use
+     * the start of the chunk instead, so the time this adds after the answer is bounded.
+     */
+    private List<ChatResponse.SourceReference> buildSources(ChatTurn turn, String answer) {
+        long start = System.nanoTime();
+        List<ScoredChunk> chunks = turn.relevantChunks;
+        // Generate smart snippets using BOTH query and the generated answer
+        SnippetExtractor snippets = new SnippetExtractor(turn.question + " " + answer);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(snippetTimeoutMs);
+        List<Future<String>> results = new ArrayList<>(chunks.size());
+        for (ScoredChunk scored : chunks) {
+            try {
+                results.add(snippetExecutor.submit(() -> snippets.extract(scored.getChunk().getContent())));
+            } catch (RejectedExecutionException e) {
+                results.add(null); // Pool saturated
             }
         }
-        
-        Collections.sort(matchIndices);
 
-        if (matchIndices.isEmpty()) {
-             return content.length() > 150 ? content.substring(0, 150) + "..." : content;
+        List<ChatResponse.SourceReference> sources = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentChunk chunk = chunks.get(i).getChunk();
+            ChatResponse.SourceReference ref = new ChatResponse.SourceReference();
+            ref.setDocumentName(chunk.getDocumentName());
+            ref.setSection(chunk.getSection()); // Include section in source
+            ref.setSnippet(snippetOrFallback(results.get(i), chunk, deadline));
+            ref.setRelevanceScore(chunks.get(i).getScore());
+            sources.add(ref);
         }
+        sourcesTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return sources;
+    }
 
-        // 2. Sliding window to find highest density of keywords
-        int windowSize = 200;
-        int bestStart = matchIndices.get(0);
-        int maxDensity = 0;
-
-        // Check windows starting at each match
-        for (int i = 0; i < matchIndices.size(); i++) {
-            int currentStart = matchIndices.get(i);
-            int currentEnd = currentStart + windowSize;
-            int density = 0;
-
-            // Count matches in this window
-            for (int j = i; j < matchIndices.size(); j++) {
-                int pos = matchIndices.get(j);
-                if (pos >= currentStart && pos < currentEnd) {
-                    density++;
-                } else if (pos >= currentEnd) {
-                    break;
-                }
-            }
-            
-            if (density > maxDensity) {
-                maxDensity = density;
-                bestStart = currentStart;
-            }
+    private String snippetOrFallback(Future<String> result, DocumentChunk chunk, long deadline) {
+        if (result == null) return SnippetExtractor.fallback(chunk.getContent());
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | CancellationException | ExecutionException e) {
+            result.cancel(true);
+            log.debug("Snippet for chunk {} not available ({}), using its start", chunk.getId(), e.toString());
+            return SnippetExtractor.fallback(chunk.getContent());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return SnippetExtractor.fallback(chunk.getContent());
         }
+    }
 
-        // 3. Extract best window
-        int start = Math.max(0, bestStart - 40); // Add some context before
-        int end = Math.min(content.length(), start + windowSize);
-        
-        // Adjust start if we hit end boundary
-        if (end == content.length()) {
-            start = Math.max(0, end - windowSize);
+    // The same chunks packed into half the budget, whole chunks only
+    private String reducedContext(ChatTurn turn) {
+        if (turn.reducedContext == null) {
+            int budget = (config.promptTokenBudgetForChatModel()
+                    - aiClient.promptOverheadTokens(turn.question, turn.history, true)) / 2;
+            turn.reducedContext = contextPacker.pack(turn.relevantChunks, budget).getContext();
         }
-
-        String snippet = content.substring(start, end);
-
-        // Trim edges cleanly
-        if (start > 0) snippet = "..." + snippet.substring(snippet.indexOf(' ') + 1);
-        if (end < content.length()) snippet = snippet.substring(0, snippet.lastIndexOf(' ')) + "...";
-
-        return snippet;
+        return turn.reducedContext;
     }
 
-    private String generateAnswerWithRetry(String question, String context, List<Conversation.Message> history) {
-        // Try up to 2 times — on 429/rate-limit, reduce context and retry
-        for (int attempt = 0; attempt < 2; attempt++) {
-            String ctx = attempt == 0 ? context : context.substring(0, Math.min(context.length(), 10000));
-            String result = generateAnswer(question, ctx, history, attempt > 0);
-            if (result != null) return result;
-            try {
-                Thread.sleep(2000); // Wait 2 seconds before retry
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-        return "Sorry, the AI service is temporarily overloaded. Please try again in a few seconds.";
+    // An earlier answer to the same (or a near-identical) question over the same documents and history
+    private String cachedAnswer(ChatTurn turn) {
+        if (turn.cacheScope == null) return null;
+        return answerCache.lookup(turn.cacheScope, turn.question, turn.queryEmbedding);
     }
 
-    private String generateAnswer(String question, String context, List<Conversation.Message> history, boolean reducedMode) {
+    private String generateAnswerWithRetry(ChatTurn turn, BiFunction<String, Boolean, String> generate,
+                                           BooleanSupplier cancelled) {
+        long start = System.nanoTime();
         try {
-            String url = config.getApiBaseUrl() + "/chat/completions";
-
-            String systemPrompt = """
-                    You are "Neural Core", a sophisticated AI assistant designed for deep document analysis and reasoning.
-                    You have access to a vast context of provided documents.
-                    
-                    CRITICAL RULES:
-                    1. NO EMOJIS: Never use emojis. Instead, use clean typography, bold headers, and structured lists for emphasis.
-                    2. BASE YOUR ANSWERS ONLY ON THE PROVIDED DOCUMENT CONTEXT.
-                    3. If the context doesn't contain the answer, state that clearly but try to offer relevant insights from the documents if possible.
-                    4. USE YOUR ADVANCED REASONING: Analyze complex relationships across multiple document chunks.
-                    5. CITATIONS: Always cite the document name and section when providing information.
-                    6. LANGUAGE: Respond in the same language as the user.
-                    7. FORMATTING: Use clean Markdown (headers, tables, bold text) for technical or structured data.
-                    8. EXPLAIN YOUR LOGIC: If a query is complex, briefly explain how you arrived at the answer based on the documents.
-                    9. AESTHETICS: Ensure the output looks professional, high-end, and structured. Use horizontal lines (---) to separate sections if helpful.
-                    """;
-
-            String userPrompt = context.isBlank()
-                    ? "No documents have been uploaded yet. Please answer this general question:\n\n" + question
-                    : "Based on the following document context, answer the question.\n\n"
-                    + "DOCUMENT CONTEXT:\n" + context + "\n\nQUESTION: " + question;
-
-            // Build messages array (OpenAI format)
-            List<Map<String, String>> messages = new ArrayList<>();
-            messages.add(Map.of("role", "system", "content", systemPrompt));
-
-            // Add recent conversation history (Claude Opus can handle much more)
-            int maxHistory = reducedMode ? 5 : 20;
-            int startIdx = Math.max(0, history.size() - maxHistory);
-            for (int i = startIdx; i < history.size() - 1; i++) {
-                Conversation.Message msg = history.get(i);
-                // Truncate very long messages in history to save tokens
-                String content = msg.getContent();
-                if (content != null && content.length() > 300) {
-                    content = content.substring(0, 300) + "...";
-                }
-                messages.add(Map.of("role", msg.getRole(), "content", content != null ? content : ""));
-            }
-
-            messages.add(Map.of("role", "user", "content", userPrompt));
-
-            // Build request body (OpenAI-compatible format)
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", config.getChatModel());
-            requestBody.put("messages", messages);
-            requestBody.put("temperature", 0.5); // Lower temperature for more consistent reasoning
-            requestBody.put("max_tokens", reducedMode ? 2000 : 4096);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getApiKey());
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            JsonNode root = objectMapper.readTree(response.getBody());
-
-            return root.path("choices").get(0)
-                    .path("message").path("content").asText();
-
-        } catch (org.springframework.web.client.HttpClientErrorException e) {
-            int status = e.getStatusCode().value();
-            log.error("AI API error - Status: {} Body: {}", status, e.getResponseBodyAsString());
-            if (status == 429 || status == 503) {
-                // Rate limit or overloaded — return null to trigger retry
-                return null;
+            String answer = retryPolicy.execute(attempt -> {
+                // Retries send less context, in case its size was the problem
+                String ctx = attempt == 0 ? turn.context : reducedContext(turn);
+                return generate.apply(ctx, attempt > 0);
+            }, cancelled);
+            if (answer == null) return "";
+
+            // Only complete answers are cached; error texts arrive as UnavailableException
+            if (turn.cacheScope != null && !cancelled.getAsBoolean() && !answer.isBlank()) {
+                answerCache.put(turn.cacheScope, turn.question, turn.queryEmbedding, answer, System.nanoTime() - start);
             }
-            if (status == 413 || e.getResponseBodyAsString().contains("too large")) {
-                return null; // Too large — retry with reduced context
-            }
-            return "Sorry, I encountered an error (" + status + "). Please try again.";
-        } catch (Exception e) {
-            log.error("Failed to generate answer: {}", e.getMessage(), e);
-            return null;
+            return answer;
+        } catch (AiRetryPolicy.UnavailableException e) {
+            return e.getMessage();
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        snippetExecutor.shutdownNow();
+        streamExecutor.shutdownNow();
+    }
 }
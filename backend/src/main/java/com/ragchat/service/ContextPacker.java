@@ -0,0 +1,106 @@
+package com.ragchat.service;
+
+import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
+import com.ragchat.util.TokenEstimator;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fills the document context of a prompt up to a token budget. Chunks are taken
+ * greedily in ranking order: one that does not fit is skipped so smaller, lower
+ * ranked chunks can still use the remaining budget. Chunks whose text is already
+ * in the context (the same file uploaded twice, a short section repeated inside
+ * another chunk) are left out. Token counts come from ingestion, so packing does
+ * no tokenizing of chunk text.
+ */
+@Component
+public class ContextPacker {
+
+    private static final String SEPARATOR = "\n\n---\n\n";
+    private static final int SEPARATOR_TOKENS = TokenEstimator.estimate(SEPARATOR);
+
+    /** The packed context and the chunks it contains, in ranking order. */
+    public static class Packed {
+        private final String context;
+        private final List<ScoredChunk> chunks;
+        private final int tokens;
+
+        Packed(String context, List<ScoredChunk> chunks, int tokens) {
+            this.context = context;
+            this.chunks = chunks;
+            this.tokens = tokens;
+        }
+
+        public String getContext() { return context; }
+        public List<ScoredChunk> getChunks() { return chunks; }
+        public int getTokens() { return tokens; }
+    }
+
+    public Packed pack(List<ScoredChunk> ranked, int budgetTokens) {
+        StringBuilder context = new StringBuilder();
+        List<ScoredChunk> packed = new ArrayList<>();
+        List<String> packedContents = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int used = 0;
+
+        for (ScoredChunk scored : ranked) {
+            DocumentChunk chunk = scored.getChunk();
+            String content = chunk.getContent() != null ? chunk.getContent() : "";
+            if (!seen.add(content) || containedIn(content, packedContents)) continue;
+
+            String header = "[Document: " + chunk.getDocumentName() + "]\n";
+            int tokens = TokenEstimator.estimate(header) + contentTokens(chunk)
+                    + (packed.isEmpty() ? 0 : SEPARATOR_TOKENS);
+            if (used + tokens > budgetTokens) {
+                // If context is still empty (first chunk is too big), add as much of it as fits
+                if (packed.isEmpty() && budgetTokens > 0) {
+                    String cut = truncateToTokens(content, budgetTokens - TokenEstimator.estimate(header));
+                    if (!cut.isEmpty()) {
+                        context.append(header).append(cut);
+                        packed.add(scored);
+                        packedContents.add(cut);
+                        used = budgetTokens;
+                    }
+                }
+                continue;
+            }
+
+            if (!packed.isEmpty()) context.append(SEPARATOR);
+            context.append(header).append(content);
+            packed.add(scored);
+            packedContents.add(content);
+            used += tokens;
+        }
+        return new Packed(context.toString(), packed, used);
+    }
+
+    private static int contentTokens(DocumentChunk chunk) {
+        // Rows ingested before token counts were stored
+        return chunk.getTokenCount() > 0 ? chunk.getTokenCount() : TokenEstimator.estimate(chunk.getContent());
+    }
+
+    private static boolean containedIn(String content, List<String> packedContents) {
+        for (String other : packedContents) {
+            if (other.length() > content.length() && other.contains(content)) return true;
+        }
+        return false;
+    }
+
+    // Longest prefix whose estimate fits, cut back to a word boundary when there is one
+    private static String truncateToTokens(String content, int maxTokens) {
+        if (maxTokens <= 0) return "";
+        int low = 0, high = content.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (TokenEstimator.estimate(content.substring(0, mid)) <= maxTokens) low = mid;
+            else high = mid - 1;
+        }
+        int space = content.lastIndexOf(' ', low);
+        return content.substring(0, space > 0 && low < content.length() ? space : low);
+    }
+}
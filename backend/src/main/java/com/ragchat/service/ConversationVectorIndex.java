@@ -0,0 +1,450 @@
+package com.ragchat.service;
+
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.HnswGraph;
+import com.ragchat.util.InvertedIndex;
+import com.ragchat.util.SimilarityKernel;
+import com.ragchat.util.SparseVector;
+import com.ragchat.util.TopK;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident embedding index for a single conversation.
+ * Vectors are L2-normalized and packed row-major next to their chunk ids, so a query
+ * never has to hydrate DocumentChunk entities and cosine similarity is a plain dot
+ * product. With INT8 precision rows are kept as scalar-quantized bytes plus one
+ * scale per row and are scored without decoding. In sparse mode only per-bucket
+ * posting lists are kept and a query walks just the buckets it hits.
+ */
+public class ConversationVectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // Rows scored per kernel call; keeps the score buffer small and cache-resident
+    private static final int SCORE_BLOCK = 256;
+
+    private final SimilarityKernel kernel;
+    private final boolean int8;
+    private final boolean sparse;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rowById = new HashMap<>();
+
+    private int dimension;
+    private int size;
+    private String[] chunkIds = new String[0];
+    private String[] documentIds = new String[0];
+    private float[] vectors = new float[0];   // FLOAT32 rows
+    private byte[] codes = new byte[0];       // INT8 rows
+    private float[] scales = new float[0];    // INT8 per-row scale
+    private InvertedIndex postings;           // sparse mode
+    private volatile long estimatedBytes;
+
+    // Optional approximate-search graph over the same rows (rag.index.type=hnsw)
+    private HnswGraph graph;
+    private volatile boolean graphDirty;
+    // Bumped whenever rows are removed (row numbers shift), so a graph built meanwhile is discarded
+    private long removals;
+    // Set while a background graph build is queued or running
+    private final AtomicBoolean graphBuildPending = new AtomicBoolean();
+    private final HnswGraph.Vectors rowVectors = new HnswGraph.Vectors() {
+        @Override
+        public float score(float[] query, int node) {
+            return rowScore(query, node);
+        }
+
+        @Override
+        public float[] vector(int node) {
+            return rowVector(node);
+        }
+    };
+
+    public ConversationVectorIndex(SimilarityKernel kernel, EmbeddingCodec.Precision precision, boolean sparse) {
+        this.kernel = kernel;
+        this.int8 = precision == EmbeddingCodec.Precision.INT8;
+        this.sparse = sparse;
+    }
+
+    /**
+     * Holds the write lock while the initial rows are loaded, so readers and
+     * incremental adds wait for a complete index. Must be paired with {@link #endLoad()}
+     * on the same thread.
+     */
+    public void beginLoad() {
+        lock.writeLock().lock();
+    }
+
+    public void endLoad() {
+        lock.writeLock().unlock();
+    }
+
+    public void add(String chunkId, String documentId, float[] embedding) {
+        if (embedding == null) return;
+        lock.writeLock().lock();
+        try {
+            if (rowById.containsKey(chunkId)) return; // Already picked up by the initial load
+            if (dimension == 0) dimension = embedding.length;
+            if (embedding.length != dimension) return;
+
+            ensureCapacity(size + 1);
+            float[] row = Arrays.copyOf(embedding, dimension);
+            SimilarityKernel.normalize(row, 0, dimension);
+            if (sparse) {
+                if (postings == null) postings = new InvertedIndex(dimension);
+                postings.add(size, SparseVector.fromDense(row));
+            } else if (int8) {
+                scales[size] = EmbeddingCodec.quantize(row, 0, dimension, codes, size * dimension);
+            } else {
+                System.arraycopy(row, 0, vectors, size * dimension, dimension);
+            }
+            chunkIds[size] = chunkId;
+            documentIds[size] = documentId;
+            rowById.put(chunkId, size);
+            size++;
+            if (graph != null) {
+                graph.add(size - 1, rowVectors);
+                graphDirty = true;
+            }
+            updateEstimatedBytes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every row that belongs to the document, compacting the matrix in place.
+     * Returns the number of removed rows.
+     */
+    public int removeDocument(String documentId) {
+        lock.writeLock().lock();
+        try {
+            int write = 0;
+            int[] newRow = sparse ? new int[size] : null;
+            for (int read = 0; read < size; read++) {
+                if (documentId.equals(documentIds[read])) {
+                    if (sparse) newRow[read] = -1;
+                    continue;
+                }
+                if (sparse) newRow[read] = write;
+                if (write != read) {
+                    if (!sparse) moveRow(read, write); // Posting lists are renumbered below
+                    chunkIds[write] = chunkIds[read];
+                    documentIds[write] = documentIds[read];
+                }
+                write++;
+            }
+            int removed = size - write;
+            if (removed > 0) {
+                if (sparse) postings.remap(newRow);
+                Arrays.fill(chunkIds, write, size, null);
+                Arrays.fill(documentIds, write, size, null);
+                size = write;
+                rowById.clear();
+                for (int i = 0; i < size; i++) rowById.put(chunkIds[i], i);
+                // Row numbers changed, so the graph has to be rebuilt
+                graph = null;
+                graphDirty = false;
+                removals++;
+                updateEstimatedBytes();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scores every row against the query in a single pass and returns the best
+     * {@code k} chunk ids with their cosine similarity, highest first.
+     */
+    public List<Map.Entry<String, Double>> search(double[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (size == 0 || query == null || query.length != dimension) return Collections.emptyList();
+
+            float[] q = toFloat(query);
+
+            TopK top = new TopK(Math.min(k, size));
+            if (sparse) {
+                postings.search(SparseVector.fromDense(q), size, top);
+                return toResults(top);
+            }
+            float[] block = new float[Math.min(SCORE_BLOCK, size)];
+            for (int from = 0; from < size; from += SCORE_BLOCK) {
+                int to = Math.min(from + SCORE_BLOCK, size);
+                if (int8) {
+                    kernel.scoreRowsInt8(q, codes, scales, dimension, from, to, block);
+                } else {
+                    kernel.scoreRows(q, vectors, dimension, from, to, block);
+                }
+                for (int row = from; row < to; row++) {
+                    top.offer(row, block[row - from]);
+                }
+            }
+            return toResults(top);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate top-k through the HNSW graph; falls back to the exact scan when
+     * no graph has been built for this index.
+     */
+    public List<Map.Entry<String, Double>> searchApproximate(double[] query, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            if (graph == null) return search(query, k);
+            if (size == 0 || query == null || query.length != dimension) return Collections.emptyList();
+
+            float[] q = toFloat(query);
+            float[] scores = new float[Math.min(k, size)];
+            int[] rows = graph.search(q, k, ef, rowVectors, scores);
+            List<Map.Entry<String, Double>> results = new ArrayList<>(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                results.add(Map.entry(chunkIds[rows[i]], (double) scores[i]));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Claims the graph build for the caller; false when one is already pending. */
+    boolean tryStartGraphBuild() {
+        return graphBuildPending.compareAndSet(false, true);
+    }
+
+    void endGraphBuild() {
+        graphBuildPending.set(false);
+    }
+
+    public boolean hasGraph() {
+        lock.readLock().lock();
+        try {
+            return graph != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the HNSW graph over all current rows. The rows are copied under a short
+     * read lock and the graph is built from the copy without holding any lock, so
+     * searches (on the exact scan) and adds are never blocked by the build; rows added
+     * meanwhile are inserted when the graph is attached under the write lock. Returns
+     * false when rows were removed in the meantime and the graph was discarded. Later
+     * adds extend it incrementally.
+     */
+    public boolean buildGraph(int m, int efConstruction) {
+        HnswGraph.Vectors snapshot;
+        int builtRows;
+        long removalsAtStart;
+        lock.readLock().lock();
+        try {
+            removalsAtStart = removals;
+            builtRows = size;
+            snapshot = snapshotRows(builtRows);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        HnswGraph built = new HnswGraph(m, efConstruction, builtRows);
+        for (int row = 0; row < builtRows; row++) {
+            built.add(row, snapshot);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (removals != removalsAtStart) return false;
+            for (int row = builtRows; row < size; row++) {
+                built.add(row, rowVectors);
+            }
+            graph = built;
+            graphDirty = true;
+            updateEstimatedBytes();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Attaches a graph restored from disk. Only valid if the rows were added in the
+     * same order as when the graph was written (see {@link #writeGraph}).
+     */
+    public void attachGraph(HnswGraph restored) {
+        lock.writeLock().lock();
+        try {
+            if (restored.size() != size) {
+                throw new IllegalArgumentException("Graph has " + restored.size() + " nodes but index has " + size + " rows");
+            }
+            graph = restored;
+            graphDirty = false;
+            updateEstimatedBytes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the row order (chunk ids) followed by the graph, if the graph changed
+     * since it was last written. Returns false when there was nothing to write.
+     */
+    public boolean writeGraph(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (graph == null || !graphDirty) return false;
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) out.writeUTF(chunkIds[i]);
+            graph.writeTo(out);
+            graphDirty = false;
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recall@k of the graph against the exact scan, using up to {@code samples}
+     * stored vectors as queries.
+     */
+    public double measureRecall(int k, int ef, int samples) {
+        lock.readLock().lock();
+        try {
+            if (graph == null || size == 0) return 1.0;
+            int step = Math.max(1, size / Math.max(1, samples));
+            double total = 0;
+            int measured = 0;
+            for (int row = 0; row < size && measured < samples; row += step) {
+                float[] decoded = rowVector(row);
+                double[] query = new double[dimension];
+                for (int i = 0; i < dimension; i++) query[i] = decoded[i];
+                total += recall(search(query, k), searchApproximate(query, k, ef));
+                measured++;
+            }
+            return measured == 0 ? 1.0 : total / measured;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Fraction of the exact top-k ids that the approximate result also contains. */
+    public static double recall(List<Map.Entry<String, Double>> exact, List<Map.Entry<String, Double>> approximate) {
+        if (exact.isEmpty()) return 1.0;
+        Set<String> approximateIds = new HashSet<>();
+        for (Map.Entry<String, Double> hit : approximate) approximateIds.add(hit.getKey());
+        int found = 0;
+        for (Map.Entry<String, Double> hit : exact) {
+            if (approximateIds.contains(hit.getKey())) found++;
+        }
+        return (double) found / exact.size();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rough heap footprint used for the memory budget: the packed matrix plus
+     * per-row id references and map entries. Read without locking.
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    private void updateEstimatedBytes() {
+        estimatedBytes = (long) vectors.length * Float.BYTES + codes.length + (long) scales.length * Float.BYTES
+                + (long) chunkIds.length * 2 * 8 + (long) size * 128
+                + (graph != null ? graph.estimatedBytes() : 0)
+                + (postings != null ? postings.estimatedBytes() : 0);
+    }
+
+    private List<Map.Entry<String, Double>> toResults(TopK top) {
+        float[] scores = new float[top.size()];
+        int[] rows = top.drainDescending(scores);
+        List<Map.Entry<String, Double>> results = new ArrayList<>(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            results.add(Map.entry(chunkIds[rows[i]], (double) scores[i]));
+        }
+        return results;
+    }
+
+    private float rowScore(float[] query, int row) {
+        return int8
+                ? kernel.dotInt8(query, codes, row * dimension, dimension) * scales[row]
+                : kernel.dot(query, 0, vectors, row * dimension, dimension);
+    }
+
+    /** Copy of the first {@code rows} rows, scored like the live ones; caller holds the lock. */
+    private HnswGraph.Vectors snapshotRows(int rows) {
+        int dim = dimension;
+        float[] vectorsCopy = int8 ? null : Arrays.copyOf(vectors, rows * dim);
+        byte[] codesCopy = int8 ? Arrays.copyOf(codes, rows * dim) : null;
+        float[] scalesCopy = int8 ? Arrays.copyOf(scales, rows) : null;
+        return new HnswGraph.Vectors() {
+            @Override
+            public float score(float[] query, int node) {
+                return int8
+                        ? kernel.dotInt8(query, codesCopy, node * dim, dim) * scalesCopy[node]
+                        : kernel.dot(query, 0, vectorsCopy, node * dim, dim);
+            }
+
+            @Override
+            public float[] vector(int node) {
+                if (!int8) return Arrays.copyOfRange(vectorsCopy, node * dim, (node + 1) * dim);
+                float[] decoded = new float[dim];
+                for (int i = 0; i < dim; i++) decoded[i] = codesCopy[node * dim + i] * scalesCopy[node];
+                return decoded;
+            }
+        };
+    }
+
+    private float[] rowVector(int row) {
+        if (!int8) return Arrays.copyOfRange(vectors, row * dimension, (row + 1) * dimension);
+        float[] decoded = new float[dimension];
+        float scale = scales[row];
+        for (int i = 0; i < dimension; i++) decoded[i] = codes[row * dimension + i] * scale;
+        return decoded;
+    }
+
+    private float[] toFloat(double[] query) {
+        float[] q = new float[dimension];
+        for (int i = 0; i < dimension; i++) q[i] = (float) query[i];
+        SimilarityKernel.normalize(q, 0, dimension);
+        return q;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= chunkIds.length) return;
+        int capacity = Math.max(INITIAL_CAPACITY, chunkIds.length * 2);
+        while (capacity < rows) capacity *= 2;
+        chunkIds = Arrays.copyOf(chunkIds, capacity);
+        documentIds = Arrays.copyOf(documentIds, capacity);
+        if (sparse) return; // Rows live only in the posting lists
+        if (int8) {
+            codes = Arrays.copyOf(codes, capacity * dimension);
+            scales = Arrays.copyOf(scales, capacity);
+        } else {
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+        }
+    }
+
+    private void moveRow(int from, int to) {
+        if (int8) {
+            System.arraycopy(codes, from * dimension, codes, to * dimension, dimension);
+            scales[to] = scales[from];
+        } else {
+            System.arraycopy(vectors, from * dimension, vectors, to * dimension, dimension);
+        }
+    }
+}
@@ -4,14 +4,29 @@ import com.ragchat.model.DocumentChunk;
 import com.ragchat.model.DocumentInfo;
 import com.ragchat.repository.DocumentInfoRepository;
 import com.ragchat.util.DocumentParser;
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.TokenEstimator;
 import org.slf4j.Logger;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class DocumentService {
@@ -22,16 +37,73 @@ public class DocumentService {
     private final EmbeddingService embeddingService;
     private final VectorStoreService vectorStoreService;
     private final DocumentInfoRepository documentInfoRepository;
+    private final EmbeddingCodec embeddingCodec;
+    private final ThreadPoolExecutor ingestExecutor;
+    // Embeds and inserts full batches while the ingest thread keeps parsing; each upload
+    // has at most one batch in flight, so one thread per ingest worker is enough
+    private final ThreadPoolExecutor flushExecutor;
+    // One per running or queued upload, taken before the upload is spooled
+    private final Semaphore ingestSlots;
+
+    // Chunks embedded and inserted per round; also the JDBC batch size
+    @Value("${rag.ingest.batch-size:256}")
+    private int ingestBatchSize;
 
     public DocumentService(DocumentParser documentParser, EmbeddingService embeddingService, 
-                           VectorStoreService vectorStoreService, DocumentInfoRepository documentInfoRepository) {
+                           VectorStoreService vectorStoreService, DocumentInfoRepository documentInfoRepository,
+                           EmbeddingCodec embeddingCodec,
+                           @Value("${rag.ingest.workers:2}") int workers,
+                           @Value("${rag.ingest.queue-capacity:20}") int queueCapacity) {
         this.documentParser = documentParser;
         this.embeddingService = embeddingService;
         this.vectorStoreService = vectorStoreService;
         this.documentInfoRepository = documentInfoRepository;
+        this.embeddingCodec = embeddingCodec;
+
+        // Bounded queue with AbortPolicy: a full queue rejects new uploads instead of buffering them
+        AtomicInteger threadCount = new AtomicInteger();
+        this.ingestExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.ingestSlots = new Semaphore(workers + Math.max(1, queueCapacity));
+
+        AtomicInteger flushThreadCount = new AtomicInteger();
+        this.flushExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-flush-" + flushThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
     }
 
-    public DocumentInfo uploadDocument(MultipartFile file, String conversationId) {
+    /**
+     * Registers the upload in PROCESSING state and queues it for background ingestion.
+     * The file is spooled to a temp file first because the multipart data is gone once
+     * the request ends; a slot in the queue is reserved before that, so a full queue
+     * rejects the upload without reading it.
+     *
+     * @throws RejectedExecutionException when the ingestion queue is full
+     */
+    public DocumentInfo uploadDocument(MultipartFile file, String conversationId) throws IOException {
+        if (!ingestSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Ingestion queue is full");
+        }
+        try {
+            return queueUpload(file, conversationId);
+        } catch (IOException | RuntimeException e) {
+            ingestSlots.release();
+            throw e;
+        }
+    }
+
+    private DocumentInfo queueUpload(MultipartFile file, String conversationId) throws IOException {
         String documentId = UUID.randomUUID().toString();
         String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "unknown";
 
@@ -44,45 +116,224 @@ public class DocumentService {
         docInfo.setUploadedAt(LocalDateTime.now());
         docInfo.setStatus("PROCESSING");
 
+        // Hash while spooling; the answer cache keys on document contents
+        Path spooled = Files.createTempFile("upload-", ".tmp");
+        MessageDigest digest = newSha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+        docInfo.setContentHash(HexFormat.of().formatHex(digest.digest()));
+
         documentInfoRepository.save(docInfo);
+        try {
+            ingestExecutor.execute(() -> {
+                try {
+                    processDocument(documentId, spooled);
+                } finally {
+                    ingestSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            documentInfoRepository.deleteById(documentId);
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+        return docInfo;
+    }
+
+    private void processDocument(String documentId, Path spooled) {
+        // Work on a fresh copy; the instance handed back to the client is not shared with this thread
+        DocumentInfo docInfo = documentInfoRepository.findById(documentId).orElse(null);
+        if (docInfo == null) {
+            deleteSpooled(spooled); // Deleted while still queued
+            return;
+        }
+        String fileName = docInfo.getName();
+        String conversationId = docInfo.getConversationId();
 
+        IngestBatcher batcher = new IngestBatcher(docInfo);
         try {
-            String fullText = documentParser.extractText(file);
-            log.info("Extracted {} characters from document: {}", fullText.length(), fileName);
+            // Parsing and splitting stream chunks into batches; each full batch is embedded
+            // and bulk inserted on a flush thread while the parser continues with the next
+            long start = System.nanoTime();
+            long characters = documentParser.streamSectionedChunks(spooled, batcher::add);
+            batcher.finish();
+            long totalNanos = System.nanoTime() - start;
 
-            List<Map.Entry<String, String>> chunks = documentParser.splitIntoSectionedChunks(fullText);
-            log.info("Split into {} chunks", chunks.size());
+            log.info("Ingestion timings for {} ({} characters, {} chunks): total {} ms, parser waited {} ms, embed {} ms, insert {} ms",
+                    fileName, characters, batcher.chunkCount, totalNanos / 1_000_000,
+                    batcher.waitNanos / 1_000_000, batcher.embedNanos / 1_000_000, batcher.insertNanos / 1_000_000);
 
-            for (int i = 0; i < chunks.size(); i++) {
-                Map.Entry<String, String> entry = chunks.get(i);
-                String section = entry.getKey();
-                String content = entry.getValue();
+            vectorStoreService.persistIndex(conversationId);
 
-                DocumentChunk chunk = new DocumentChunk();
-                chunk.setId(UUID.randomUUID().toString());
-                chunk.setDocumentId(documentId);
-                chunk.setDocumentName(fileName);
-                chunk.setContent(content);
-                chunk.setSection(section); // Save the detected section
-                chunk.setChunkIndex(i);
-                chunk.setConversationId(conversationId);
-                chunk.setEmbedding(embeddingService.embed(content));
-
-                vectorStoreService.addChunk(conversationId, chunk);
+            if (documentInfoRepository.updateStatus(documentId, "READY", batcher.chunkCount) == 0) {
+                throw new IngestCancelledException();
             }
-        
-            docInfo.setTotalChunks(chunks.size());
-            docInfo.setStatus("READY");
-            documentInfoRepository.save(docInfo); // Update status
-            log.info("Document processed successfully: {} ({} chunks)", fileName, chunks.size());
+            log.info("Document processed successfully: {} ({} chunks)", fileName, batcher.chunkCount);
 
         } catch (Exception e) {
+            // A batch still in flight must land before its chunks can be cleaned up
+            batcher.awaitQuietly();
+            if (isCancelled(e)) {
+                // Deleted while processing: drop what was already inserted
+                log.info("Document {} was deleted during ingestion, stopping", fileName);
+                vectorStoreService.removeDocument(conversationId, documentId);
+                return;
+            }
             log.error("Failed to process document: {}", fileName, e);
+            documentInfoRepository.updateStatus(documentId, "ERROR", 0);
+        } finally {
+            deleteSpooled(spooled);
+        }
+    }
+
+    /**
+     * Collects streamed chunks into batches. A full batch is handed to the flush executor
+     * and the parser goes on filling the next one; it only waits when that one is full
+     * too and the previous batch is still being embedded or inserted.
+     */
+    private class IngestBatcher {
+        private final DocumentInfo docInfo;
+        private final int batchSize = Math.max(1, ingestBatchSize);
+        private List<Map.Entry<String, String>> batch = new ArrayList<>();
+        private Future<?> inFlight;
+        private int chunkCount; // Chunks added so far; also the index of the next one
+        private long bytesRead; // Of the spooled file, up to the last chunk added
+        private long waitNanos;
+        // Written by the flush thread; read after the last flush was awaited
+        private long embedNanos;
+        private long insertNanos;
+
+        IngestBatcher(DocumentInfo docInfo) {
+            this.docInfo = docInfo;
+        }
+
+        void add(String section, String content, long bytesRead) {
+            this.bytesRead = bytesRead;
+            batch.add(Map.entry(section, content));
+            if (batch.size() >= batchSize) submit();
+        }
+
+        /** Flushes the last partial batch and waits until every batch is stored. */
+        void finish() throws InterruptedException, ExecutionException {
+            submit();
+            await();
+        }
+
+        void awaitQuietly() {
+            try {
+                await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Already failing; the first error is the one reported
+            }
+        }
+
+        private void submit() {
+            if (batch.isEmpty()) return;
+            try {
+                await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the previous batch", e);
+            } catch (ExecutionException e) {
+                // Surfaces from the parser callback; isCancelled looks through the wrapping
+                throw new IllegalStateException("Storing a batch failed", e.getCause());
+            }
+            List<Map.Entry<String, String>> full = batch;
+            int firstIndex = chunkCount;
+            long progress = bytesRead;
+            chunkCount += full.size();
+            batch = new ArrayList<>();
+            inFlight = flushExecutor.submit(() -> flush(full, firstIndex, progress));
+        }
+
+        private void await() throws InterruptedException, ExecutionException {
+            if (inFlight == null) return;
+            long start = System.nanoTime();
+            try {
+                inFlight.get();
+            } finally {
+                inFlight = null;
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+
+        private void flush(List<Map.Entry<String, String>> entries, int firstIndex, long progress) {
+            long start = System.nanoTime();
+            List<double[]> embeddings = embeddingService.embedBatch(entries.stream().map(Map.Entry::getValue).toList());
+            List<DocumentChunk> documentChunks = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Map.Entry<String, String> entry = entries.get(i);
+
+                DocumentChunk chunk = new DocumentChunk();
+                chunk.setId(UUID.randomUUID().toString());
+                chunk.setDocumentId(docInfo.getId());
+                chunk.setDocumentName(docInfo.getName());
+                chunk.setContent(entry.getValue());
+                chunk.setSection(entry.getKey()); // Save the detected section
+                chunk.setChunkIndex(firstIndex + i);
+                chunk.setConversationId(docInfo.getConversationId());
+                chunk.setEmbeddingData(embeddingCodec.encode(embeddings.get(i)));
+                chunk.setTokenCount(TokenEstimator.estimate(entry.getValue()));
+                documentChunks.add(chunk);
+            }
+            embedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            boolean inserted = vectorStoreService.addChunks(docInfo.getConversationId(), docInfo.getId(),
+                    documentChunks, batchSize);
+            insertNanos += System.nanoTime() - start;
+            if (!inserted) throw new IngestCancelledException();
+
+            // Also the check after the index was updated: a delete that removed the index rows
+            // before these were added has deleted the document row by now
+            if (documentInfoRepository.updateProgress(docInfo.getId(), progress) == 0) {
+                throw new IngestCancelledException();
+            }
+        }
+    }
+
+    private static class IngestCancelledException extends RuntimeException {
+    }
+
+    // Parsers may wrap exceptions thrown from the content handler
+    private static boolean isCancelled(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IngestCancelledException) return true;
+        }
+        return false;
+    }
+
+    private void deleteSpooled(Path spooled) {
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled upload {}: {}", spooled, e.getMessage());
+        }
+    }
+
+    /**
+     * Uploads that were queued or running when the server stopped will never finish.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterruptedUploads() {
+        List<DocumentInfo> interrupted = documentInfoRepository.findByStatus("PROCESSING");
+        for (DocumentInfo docInfo : interrupted) {
             docInfo.setStatus("ERROR");
-            documentInfoRepository.save(docInfo); // Update status
         }
+        if (!interrupted.isEmpty()) {
+            documentInfoRepository.saveAll(interrupted);
+            log.warn("Marked {} interrupted uploads as ERROR", interrupted.size());
+        }
+    }
 
-        return docInfo;
+    public Optional<DocumentInfo> getDocument(String documentId) {
+        return documentInfoRepository.findById(documentId);
     }
 
     public List<DocumentInfo> getDocuments(String conversationId) {
@@ -93,8 +344,24 @@ public class DocumentService {
         Optional<DocumentInfo> docInfoOpt = documentInfoRepository.findById(documentId);
         if (docInfoOpt.isPresent()) {
             DocumentInfo docInfo = docInfoOpt.get();
-            vectorStoreService.removeDocument(docInfo.getConversationId(), documentId);
+            // Row first: it waits for an ingest batch holding the row lock, and any batch
+            // after it inserts nothing, so the chunk removal below sees every inserted chunk
             documentInfoRepository.deleteById(documentId);
+            vectorStoreService.removeDocument(docInfo.getConversationId(), documentId);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
 }
@@ -0,0 +1,72 @@
+package com.ragchat.service;
+
+import com.ragchat.util.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes embeddings of chunks written before the bytea column existed from the legacy
+ * float8[] column into embedding_data, in batches, at startup. Until a row is
+ * migrated the vector index keeps reading its legacy column. The legacy values are
+ * left in place: with int8 precision they are the only full-precision copy, which
+ * re-ranking reads.
+ */
+@Service
+public class EmbeddingMigrationService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingMigrationService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingCodec embeddingCodec;
+
+    @Value("${rag.embedding.migration-batch-size:500}")
+    private int batchSize;
+
+    public EmbeddingMigrationService(JdbcTemplate jdbcTemplate, EmbeddingCodec embeddingCodec) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingCodec = embeddingCodec;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+        int migrated = 0;
+        while (true) {
+            List<Object[]> batch = jdbcTemplate.query(
+                    "SELECT id, embedding FROM document_chunks " +
+                    "WHERE embedding_data IS NULL AND embedding IS NOT NULL LIMIT ?",
+                    (rs, rowNum) -> new Object[]{rs.getString("id"), toDoubles(rs.getArray("embedding"))},
+                    batchSize);
+            if (batch.isEmpty()) break;
+
+            List<Object[]> updates = new ArrayList<>(batch.size());
+            for (Object[] row : batch) {
+                updates.add(new Object[]{embeddingCodec.encode((double[]) row[1]), row[0]});
+            }
+            jdbcTemplate.batchUpdate("UPDATE document_chunks SET embedding_data = ? WHERE id = ?", updates);
+            migrated += batch.size();
+        }
+        if (migrated > 0) {
+            log.info("Migrated {} chunk embeddings to {} bytea storage in {} ms",
+                    migrated, embeddingCodec.getPrecision(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private static double[] toDoubles(Array array) throws java.sql.SQLException {
+        Object values = array.getArray();
+        if (values instanceof double[] primitive) return primitive;
+        Object[] boxed = (Object[]) values;
+        double[] result = new double[boxed.length];
+        for (int i = 0; i < boxed.length; i++) result[i] = ((Number) boxed[i]).doubleValue();
+        return result;
+    }
+}
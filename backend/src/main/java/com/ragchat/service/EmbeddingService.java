@@ -1,10 +1,16 @@
 package com.ragchat.service;
 
+import com.ragchat.util.LruCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -17,39 +23,74 @@ public class EmbeddingService {
     private static final Logger log = LoggerFactory.getLogger(EmbeddingService.class);
     private static final int VECTOR_SIZE = 512;
 
+    // Own pool so ingestion does not compete with other users of the common pool
+    private final ForkJoinPool embeddingPool;
+
+    // Questions repeat (regenerate, retries, the same question in another chat)
+    private final LruCache<String, double[]> queryCache;
+
+    public EmbeddingService(@Value("${rag.ingest.embedding-threads:0}") int embeddingThreads,
+                            @Value("${rag.query-cache.embeddings:1000}") int queryCacheEntries,
+                            MeterRegistry meterRegistry) {
+        int threads = embeddingThreads > 0 ? embeddingThreads : Runtime.getRuntime().availableProcessors();
+        this.embeddingPool = new ForkJoinPool(threads);
+        log.info("Embedding pool started with {} threads", threads);
+
+        this.queryCache = new LruCache<>(queryCacheEntries);
+        FunctionCounter.builder("rag.query.cache.requests", queryCache, LruCache::getHits)
+                .tag("cache", "embedding").tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("rag.query.cache.requests", queryCache, LruCache::getMisses)
+                .tag("cache", "embedding").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Embeds a search query, reusing the vector of an identical earlier query.
+     * The returned array is shared and must not be modified.
+     */
+    public double[] embedQuery(String query) {
+        if (query == null) return embed(null);
+        double[] cached = queryCache.get(query);
+        if (cached != null) return cached;
+        double[] embedding = embed(query);
+        queryCache.put(query, embedding);
+        return embedding;
+    }
+
     public double[] embed(String text) {
         if (text == null || text.isBlank()) {
             return new double[VECTOR_SIZE];
         }
 
-        // Tokenize and normalize
-        String[] words = text.toLowerCase()
-                .replaceAll("[^a-zа-яёA-ZА-ЯЁ0-9\\s]", " ")
-                .split("\\s+");
-
-        // Create a hash-based feature vector (feature hashing / hashing trick)
+        // Single pass over the lower-cased text: a token is a run of letters/digits, and
+        // its word hash and character-trigram hashes are computed in place with the same
+        // arithmetic as String.hashCode(), so the vectors are bit-identical to hashing
+        // the token and substring objects. Per-occurrence accumulation gives the same sums
+        // as per-word frequencies because every increment is a multiple of 0.5.
+        // Whole-string toLowerCase() is kept for its locale and multi-char mappings.
+        String lower = text.toLowerCase();
         double[] vector = new double[VECTOR_SIZE];
-        Map<String, Integer> wordFreq = new HashMap<>();
 
-        for (String word : words) {
-            if (word.length() > 1) {
-                wordFreq.merge(word, 1, Integer::sum);
-            }
-        }
-
-        for (Map.Entry<String, Integer> entry : wordFreq.entrySet()) {
-            int hash = Math.abs(entry.getKey().hashCode());
-            int index = hash % VECTOR_SIZE;
-            vector[index] += entry.getValue();
-
-            // Also add bigram-like features using character n-grams
-            String word = entry.getKey();
-            if (word.length() >= 3) {
-                for (int i = 0; i <= word.length() - 3; i++) {
-                    int ngramHash = Math.abs(word.substring(i, i + 3).hashCode());
-                    int ngramIndex = ngramHash % VECTOR_SIZE;
-                    vector[ngramIndex] += 0.5 * entry.getValue();
+        int length = 0;
+        int wordHash = 0;
+        char prev2 = 0, prev1 = 0;
+        for (int i = 0, n = lower.length(); i <= n; i++) {
+            char c = i < n ? lower.charAt(i) : ' ';
+            if (isTokenChar(c)) {
+                wordHash = 31 * wordHash + c;
+                length++;
+                if (length >= 3) {
+                    int ngramHash = (prev2 * 31 + prev1) * 31 + c;
+                    vector[Math.abs(ngramHash) % VECTOR_SIZE] += 0.5;
                 }
+                prev2 = prev1;
+                prev1 = c;
+            } else if (length > 0) {
+                // Single-character words are ignored (and have no trigrams)
+                if (length > 1) {
+                    vector[Math.abs(wordHash) % VECTOR_SIZE] += 1;
+                }
+                length = 0;
+                wordHash = 0;
             }
         }
 
@@ -66,7 +107,24 @@ public class EmbeddingService {
         return vector;
     }
 
+    // Same character set the former [^a-zа-яёA-ZА-ЯЁ0-9\s] filter kept, minus whitespace
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || (c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я') || c == 'ё' || c == 'Ё';
+    }
+
+    /**
+     * Embeds the texts in parallel across the embedding pool; results keep input order.
+     */
     public List<double[]> embedBatch(List<String> texts) {
-        return texts.stream().map(this::embed).collect(Collectors.toList());
+        if (texts.size() < 2) {
+            return texts.stream().map(this::embed).collect(Collectors.toList());
+        }
+        return embeddingPool.submit(() -> texts.parallelStream().map(this::embed).collect(Collectors.toList())).join();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        embeddingPool.shutdown();
     }
 }
@@ -0,0 +1,94 @@
+package com.ragchat.service;
+
+import com.ragchat.util.HnswGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists HNSW graphs as one file per conversation so they survive restarts.
+ * Each file holds the chunk ids in row order followed by the graph, whose header
+ * carries the M and efConstruction it was built with. A graph built with other
+ * settings than the current ones is not restored.
+ */
+@Component
+public class HnswGraphStore {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswGraphStore.class);
+
+    @Value("${rag.index.hnsw.directory:data/hnsw}")
+    private String directory;
+
+    /** A graph read from disk together with the chunk id of every node. */
+    public static class StoredGraph {
+        private final List<String> chunkIds;
+        private final HnswGraph graph;
+
+        public StoredGraph(List<String> chunkIds, HnswGraph graph) {
+            this.chunkIds = chunkIds;
+            this.graph = graph;
+        }
+
+        public List<String> getChunkIds() { return chunkIds; }
+        public HnswGraph getGraph() { return graph; }
+    }
+
+    public void save(String conversationId, ConversationVectorIndex index) {
+        Path target = pathFor(conversationId);
+        try {
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), "hnsw", ".tmp");
+            boolean written;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                written = index.writeGraph(out);
+            }
+            if (written) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Saved HNSW graph for conversation {}", conversationId);
+            } else {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to save HNSW graph for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    public StoredGraph load(String conversationId, int m, int efConstruction) {
+        Path source = pathFor(conversationId);
+        if (!Files.exists(source)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            int size = in.readInt();
+            List<String> chunkIds = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) chunkIds.add(in.readUTF());
+            HnswGraph graph = HnswGraph.readFrom(in, size);
+            if (!graph.builtWith(m, efConstruction)) {
+                log.info("Ignoring HNSW graph for conversation {} built with M={}, efConstruction={}",
+                        conversationId, graph.getM(), graph.getEfConstruction());
+                return null;
+            }
+            return new StoredGraph(chunkIds, graph);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable HNSW graph for conversation {}: {}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+
+    public void delete(String conversationId) {
+        try {
+            Files.deleteIfExists(pathFor(conversationId));
+        } catch (IOException e) {
+            log.warn("Failed to delete HNSW graph for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private Path pathFor(String conversationId) {
+        // Conversation ids are UUIDs; strip anything else so the id cannot escape the directory
+        return Paths.get(directory).resolve(conversationId.replaceAll("[^A-Za-z0-9-]", "_") + ".hnsw");
+    }
+}
@@ -0,0 +1,130 @@
+package com.ragchat.service;
+
+import com.ragchat.repository.DocumentChunkBatchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Full-text search over chunk content in Postgres, on a tsvector column with the
+ * 'simple' configuration (no stemming or stop words that would lose names and part
+ * numbers) and a GIN index on it. A query is turned into an OR of its keywords and
+ * ranked with ts_rank_cd in the database, so only the requested number of (id, rank)
+ * rows come back.
+ * The schema work never blocks the table: the column is a plain nullable one (adding
+ * it is a catalog change only), new chunks get their vector in their INSERT, existing
+ * ones are backfilled in primary-key order in batches in the background, and the
+ * index is built CONCURRENTLY. Once everything exists a startup only walks the ids and
+ * updates nothing. Until the index is ready, or when the database does not support
+ * it, searches return nothing and retrieval stays vector-only.
+ */
+@Service
+public class LexicalSearchService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LexicalSearchService.class);
+
+    private static final String SEARCH_SQL =
+            "SELECT c.id, ts_rank_cd(c.content_tsv, q) AS rank " +
+            "FROM document_chunks c, to_tsquery('simple', ?) q " +
+            "WHERE c.conversation_id = ? AND c.content_tsv @@ q " +
+            "ORDER BY rank DESC, c.id LIMIT ?";
+
+    private static final String TSV = "to_tsvector('simple', coalesce(content, ''))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DocumentChunkBatchRepository chunkBatchRepository;
+    private volatile boolean available;
+
+    @Value("${rag.retrieval.backfill-batch-size:500}")
+    private int backfillBatchSize;
+
+    public LexicalSearchService(JdbcTemplate jdbcTemplate, DocumentChunkBatchRepository chunkBatchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkBatchRepository = chunkBatchRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            jdbcTemplate.execute("ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS content_tsv tsvector");
+        } catch (Exception e) {
+            log.warn("Full-text column could not be added, retrieval stays vector-only: {}", e.getMessage());
+            return;
+        }
+        // Chunks inserted from here on carry their vector. One whose insert was already
+        // running may commit without it behind the backfill; the next startup fills it
+        chunkBatchRepository.enableFullTextColumn();
+        Thread thread = new Thread(this::backfillAndIndex, "fulltext-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void backfillAndIndex() {
+        long start = System.currentTimeMillis();
+        try {
+            // Keyset pages over the primary key: each batch is an index range scan, and
+            // every row is visited once however many are already filled
+            int filled = 0;
+            String after = "";
+            while (true) {
+                List<String> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM document_chunks WHERE id > ? ORDER BY id LIMIT ?",
+                        String.class, after, backfillBatchSize);
+                if (ids.isEmpty()) break;
+                String last = ids.get(ids.size() - 1);
+                filled += jdbcTemplate.update("UPDATE document_chunks SET content_tsv = " + TSV +
+                        " WHERE id > ? AND id <= ? AND content_tsv IS NULL", after, last);
+                after = last;
+            }
+
+            // A failed concurrent build leaves an invalid index behind that IF NOT EXISTS would keep
+            List<Boolean> valid = jdbcTemplate.queryForList(
+                    "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+                    "WHERE c.relname = 'idx_document_chunks_content_tsv'", Boolean.class);
+            if (!valid.isEmpty() && !valid.get(0)) {
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS idx_document_chunks_content_tsv");
+            }
+            if (valid.isEmpty() || !valid.get(0)) {
+                jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_document_chunks_content_tsv " +
+                        "ON document_chunks USING gin (content_tsv)");
+            }
+            available = true;
+            log.info("Full-text index on document_chunks ready in {} ms ({} chunks backfilled)",
+                    System.currentTimeMillis() - start, filled);
+        } catch (Exception e) {
+            log.warn("Full-text index could not be created, retrieval stays vector-only: {}", e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * The conversation's chunks matching any keyword of the query, best ts_rank_cd
+     * first, at most {@code limit} of them.
+     */
+    public List<Map.Entry<String, Double>> search(String conversationId, String query, int limit) {
+        String tsQuery = toTsQuery(query);
+        if (!available || tsQuery.isEmpty() || limit <= 0) return Collections.emptyList();
+        return jdbcTemplate.query(SEARCH_SQL,
+                (rs, rowNum) -> Map.entry(rs.getString("id"), rs.getDouble("rank")),
+                tsQuery, conversationId, limit);
+    }
+
+    // Same keywords as the snippets use (words over 3 characters or containing a digit),
+    // reduced to letters and digits so the user's text can never be tsquery syntax
+    static String toTsQuery(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 3 || word.chars().anyMatch(Character::isDigit)) terms.add(word);
+        }
+        return String.join(" | ", terms);
+    }
+}
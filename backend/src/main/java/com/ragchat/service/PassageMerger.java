@@ -0,0 +1,133 @@
+package com.ragchat.service;
+
+import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
+import com.ragchat.util.TokenEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Coalesces retrieved chunks that are neighbouring windows of one section: the same
+ * document and section, consecutive chunk indexes, and the later one starting with
+ * exactly the overlap words the earlier one ends with. The merged passage keeps that
+ * text once. Chunks that only look adjacent (e.g. two sections sharing a header)
+ * stay separate passages. A passage scores as its best chunk and takes its id as a
+ * representative one (see {@link ScoredChunk}); passages keep the ranking order of
+ * their best ranked chunk (the retrieval order, which with hybrid search is not the
+ * order of the scores).
+ */
+@Component
+public class PassageMerger {
+
+    @Value("${rag.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${rag.chunk-overlap:50}")
+    private int chunkOverlap;
+
+    public List<ScoredChunk> merge(List<ScoredChunk> ranked) {
+        if (ranked.size() < 2) return ranked;
+
+        Map<ScoredChunk, Integer> rank = new IdentityHashMap<>();
+        Map<String, List<ScoredChunk>> bySection = new LinkedHashMap<>();
+        for (ScoredChunk scored : ranked) {
+            rank.put(scored, rank.size());
+            DocumentChunk chunk = scored.getChunk();
+            bySection.computeIfAbsent(chunk.getDocumentId() + '\n' + chunk.getSection(), k -> new ArrayList<>()).add(scored);
+        }
+
+        List<ScoredChunk> passages = new ArrayList<>(ranked.size());
+        Map<ScoredChunk, Integer> passageRank = new IdentityHashMap<>();
+        for (List<ScoredChunk> group : bySection.values()) {
+            group.sort(Comparator.comparingInt(scored -> scored.getChunk().getChunkIndex()));
+            List<ScoredChunk> run = new ArrayList<>();
+            for (ScoredChunk scored : group) {
+                // The same chunk retrieved twice (index duplicates) adds nothing
+                if (!run.isEmpty() && scored.getChunk().getChunkIndex() == lastIndex(run)) continue;
+                if (!run.isEmpty() && (scored.getChunk().getChunkIndex() != lastIndex(run) + 1
+                        || !continuesWindow(run.get(run.size() - 1).getChunk(), scored.getChunk()))) {
+                    addPassage(run, rank, passages, passageRank);
+                    run.clear();
+                }
+                run.add(scored);
+            }
+            addPassage(run, rank, passages, passageRank);
+        }
+
+        passages.sort(Comparator.comparingInt(passageRank::get));
+        return passages;
+    }
+
+    // A passage ranks where its best ranked chunk was retrieved
+    private void addPassage(List<ScoredChunk> run, Map<ScoredChunk, Integer> rank,
+                            List<ScoredChunk> passages, Map<ScoredChunk, Integer> passageRank) {
+        int first = Integer.MAX_VALUE;
+        for (ScoredChunk scored : run) first = Math.min(first, rank.get(scored));
+        ScoredChunk passage = toPassage(run);
+        passages.add(passage);
+        passageRank.put(passage, first);
+    }
+
+    private static int lastIndex(List<ScoredChunk> run) {
+        return run.get(run.size() - 1).getChunk().getChunkIndex();
+    }
+
+    private ScoredChunk toPassage(List<ScoredChunk> run) {
+        if (run.size() == 1) return run.get(0);
+
+        ScoredChunk best = run.get(0);
+        for (ScoredChunk scored : run) {
+            if (scored.getScore() > best.getScore()) best = scored;
+        }
+
+        DocumentChunk first = run.get(0).getChunk();
+        List<String> words = new ArrayList<>(Arrays.asList(words(first.getContent())));
+        int tokens = first.getTokenCount() > 0 ? first.getTokenCount() : TokenEstimator.estimate(first.getContent());
+        for (int i = 1; i < run.size(); i++) {
+            DocumentChunk next = run.get(i).getChunk();
+            String[] nextWords = words(next.getContent());
+            List<String> added = Arrays.asList(nextWords).subList(windowOverlap(), nextWords.length);
+            words.addAll(added);
+            tokens += TokenEstimator.estimate(String.join(" ", added)) + 1;
+        }
+
+        // Not persisted: a prompt-side view of several stored chunks
+        DocumentChunk passage = new DocumentChunk();
+        passage.setId(best.getChunk().getId());
+        passage.setDocumentId(first.getDocumentId());
+        passage.setDocumentName(first.getDocumentName());
+        passage.setSection(first.getSection());
+        passage.setConversationId(first.getConversationId());
+        passage.setChunkIndex(first.getChunkIndex());
+        passage.setContent(String.join(" ", words));
+        passage.setTokenCount(tokens);
+        return new ScoredChunk(passage, best.getScore());
+    }
+
+    // Words shared by consecutive windows, as SectionChunker cuts them (it always advances by at least one word)
+    private int windowOverlap() {
+        return Math.max(0, Math.min(chunkOverlap, chunkSize - 1));
+    }
+
+    // Whether next is the window after previous: it starts with the full overlap previous ends with.
+    // Without an overlap configured the consecutive index within the section is all there is to go by
+    private boolean continuesWindow(DocumentChunk previous, DocumentChunk next) {
+        int overlap = windowOverlap();
+        if (overlap == 0) return true;
+        String[] before = words(previous.getContent());
+        String[] after = words(next.getContent());
+        if (before.length < overlap || after.length < overlap) return false;
+        int offset = before.length - overlap;
+        for (int i = 0; i < overlap; i++) {
+            if (!before[offset + i].equals(after[i])) return false;
+        }
+        return true;
+    }
+
+    private static String[] words(String content) {
+        if (content == null || content.isBlank()) return new String[0];
+        return content.trim().split("\\s+");
+    }
+}
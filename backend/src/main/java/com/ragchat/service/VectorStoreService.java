@@ -1,7 +1,16 @@
 package com.ragchat.service;
 
 import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
+import com.ragchat.repository.DocumentChunkBatchRepository;
 import com.ragchat.repository.DocumentChunkRepository;
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.LruCache;
+import com.ragchat.util.SimilarityKernel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,6 +18,12 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,51 +32,411 @@ public class VectorStoreService {
     private static final Logger log = LoggerFactory.getLogger(VectorStoreService.class);
 
     private final DocumentChunkRepository chunkRepository;
+    private final DocumentChunkBatchRepository chunkBatchRepository;
+    private final HnswGraphStore graphStore;
+    private final LexicalSearchService lexicalSearchService;
+    private final EmbeddingService embeddingService;
+    private final EmbeddingCodec embeddingCodec;
+    private final DistributionSummary recallSummary;
+    private final SimilarityKernel kernel;
+    // HNSW graphs are built off the request path, one at a time
+    private final ExecutorService graphBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hnsw-build");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Resident indexes in access order, so the eldest entry is the coldest conversation
+    private final LinkedHashMap<String, ConversationVectorIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Bumped whenever a conversation's chunks change; part of every result cache key, so
+    // results computed before a change are never served after it. Values come from one
+    // global sequence so a conversation never returns to a version it had before.
+    // Entries live as long as the conversation.
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    // (conversation, version, query) -> ranked (chunk id, score) hits
+    private final LruCache<String, List<Map.Entry<String, Double>>> resultCache;
 
     @Value("${rag.top-k:5}")
     private int topK;
 
-    public VectorStoreService(DocumentChunkRepository chunkRepository) {
+    // "vector" (embedding similarity only) or "hybrid" (fused with full-text search)
+    @Value("${rag.retrieval.mode:hybrid}")
+    private String retrievalMode;
+
+    // Depth of each ranked list that goes into the fusion
+    @Value("${rag.retrieval.candidates:100}")
+    private int fusionCandidates;
+
+    // Reciprocal-rank fusion constant: larger values flatten the advantage of top ranks
+    @Value("${rag.retrieval.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${rag.index.memory-budget-mb:256}")
+    private long memoryBudgetMb;
+
+    // "exact" (brute-force scan), "hnsw" (approximate graph search) or "sparse" (inverted index)
+    @Value("${rag.index.type:exact}")
+    private String indexType;
+
+    @Value("${rag.index.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${rag.index.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
+
+    @Value("${rag.index.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    // Below this many chunks the exact scan is cheap enough and always exact
+    @Value("${rag.index.hnsw.min-size:2000}")
+    private int hnswMinSize;
+
+    // Fraction of approximate searches that are also run exactly to track recall
+    @Value("${rag.index.hnsw.recall-sample-rate:0.02}")
+    private double recallSampleRate;
+
+    // With quantized vectors: re-score this many candidates exactly before taking top-k (0 = off)
+    @Value("${rag.embedding.rerank-candidates:0}")
+    private int rerankCandidates;
+
+    public VectorStoreService(DocumentChunkRepository chunkRepository, DocumentChunkBatchRepository chunkBatchRepository,
+                              HnswGraphStore graphStore,
+                              LexicalSearchService lexicalSearchService,
+                              EmbeddingService embeddingService,
+                              EmbeddingCodec embeddingCodec,
+                              MeterRegistry meterRegistry,
+                              @Value("${rag.similarity.simd:true}") boolean simd,
+                              @Value("${rag.query-cache.results:1000}") int resultCacheEntries) {
         this.chunkRepository = chunkRepository;
+        this.chunkBatchRepository = chunkBatchRepository;
+        this.graphStore = graphStore;
+        this.lexicalSearchService = lexicalSearchService;
+        this.embeddingService = embeddingService;
+        this.embeddingCodec = embeddingCodec;
+        this.kernel = SimilarityKernel.create(simd);
+        this.recallSummary = DistributionSummary.builder("rag.index.hnsw.recall")
+                .description("Recall@k of HNSW search against the exact scan on sampled queries")
+                .register(meterRegistry);
+        this.resultCache = new LruCache<>(resultCacheEntries);
+        FunctionCounter.builder("rag.query.cache.requests", resultCache, LruCache::getHits)
+                .tag("cache", "results").tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("rag.query.cache.requests", resultCache, LruCache::getMisses)
+                .tag("cache", "results").tag("result", "miss").register(meterRegistry);
     }
 
     public void addChunk(String conversationId, DocumentChunk chunk) {
         chunk.setConversationId(conversationId);
-        chunkRepository.save(chunk);
+        chunkBatchRepository.insertAll(List.of(chunk), 1);
+
+        ConversationVectorIndex index = residentIndex(conversationId);
+        if (index != null) {
+            index.add(chunk.getId(), chunk.getDocumentId(), EmbeddingCodec.decode(chunk.getEmbeddingData()));
+            enforceMemoryBudget(conversationId);
+        }
+        bumpVersion(conversationId);
     }
 
-    public List<DocumentChunk> search(String conversationId, double[] queryEmbedding) {
-        List<DocumentChunk> chunks = chunkRepository.findByConversationId(conversationId);
-        if (chunks.isEmpty()) return Collections.emptyList();
+    /**
+     * Bulk variant of {@link #addChunk} for chunks of one document: one JDBC batch per
+     * {@code batchSize} rows. Returns false, adding nothing, when the document has
+     * been deleted.
+     */
+    public boolean addChunks(String conversationId, String documentId, List<DocumentChunk> chunks, int batchSize) {
+        if (chunks.isEmpty()) return true;
+        for (DocumentChunk chunk : chunks) chunk.setConversationId(conversationId);
+        if (!chunkBatchRepository.insertForDocument(documentId, chunks, batchSize)) return false;
 
-        return chunks.stream()
-                .map(chunk -> Map.entry(chunk, cosineSimilarity(queryEmbedding, chunk.getEmbedding())))
-                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-                .limit(topK)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        ConversationVectorIndex index = residentIndex(conversationId);
+        if (index != null) {
+            for (DocumentChunk chunk : chunks) {
+                index.add(chunk.getId(), chunk.getDocumentId(), EmbeddingCodec.decode(chunk.getEmbeddingData()));
+            }
+            enforceMemoryBudget(conversationId);
+        }
+        bumpVersion(conversationId);
+        return true;
     }
 
-    public Map<String, Double> searchWithScores(String conversationId, double[] queryEmbedding) {
-        List<DocumentChunk> chunks = chunkRepository.findByConversationId(conversationId);
-        if (chunks.isEmpty()) return Collections.emptyMap();
+    /**
+     * Ranks the conversation's chunks against the query in a single scan and
+     * returns the top-k chunks with their scores, highest first. When re-ranking is
+     * enabled, a wider candidate set is scored on the (possibly approximate) index and
+     * then re-scored from the stored embeddings.
+     * In hybrid mode the vector ranking is fused with the full-text ranking from
+     * Postgres by reciprocal rank, which lets exact terms such as names and part
+     * numbers reach the top even when their embedding similarity is modest. The
+     * fusion only decides the order; every chunk keeps its cosine similarity as score.
+     * The ranked ids are cached per (conversation, index version, query), so asking
+     * the same question again only fetches the chunks.
+     */
+    public List<ScoredChunk> search(String conversationId, String query, double[] queryEmbedding) {
+        String cacheKey = conversationId + '\n' + versions.getOrDefault(conversationId, 0L) + '\n' + query;
+        List<Map.Entry<String, Double>> cached = resultCache.get(cacheKey);
+        if (cached != null) return fetchChunks(cached);
 
-        return chunks.stream()
-                .map(chunk -> Map.entry(chunk.getId(), cosineSimilarity(queryEmbedding, chunk.getEmbedding())))
-                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
+        boolean hybrid = "hybrid".equals(retrievalMode) && lexicalSearchService.isAvailable();
+        int depth = hybrid ? Math.max(topK, fusionCandidates) : topK;
+        ConversationVectorIndex index = getIndex(conversationId);
+        int candidates = Math.max(depth, rerankCandidates);
+        List<Map.Entry<String, Double>> hits = useGraph(conversationId, index)
+                ? searchApproximate(index, queryEmbedding, candidates)
+                : index.search(queryEmbedding, candidates);
+
+        List<ScoredChunk> results;
+        if (hybrid) {
+            if (candidates > depth) hits = toHits(rerank(fetchChunks(hits), queryEmbedding, depth));
+            List<Map.Entry<String, Double>> lexical = lexicalSearchService.search(conversationId, query, depth);
+            results = fetchChunks(fuse(hits, lexical));
+            // Found by full-text search only
+            List<ScoredChunk> unscored = results.stream().filter(result -> Double.isNaN(result.getScore())).toList();
+            List<float[]> vectors = exactEmbeddings(unscored);
+            for (int i = 0; i < unscored.size(); i++) {
+                unscored.get(i).setScore(cosineSimilarity(queryEmbedding, vectors.get(i)));
+            }
+        } else {
+            results = hits.isEmpty() ? Collections.emptyList() : fetchChunks(hits);
+            if (candidates > topK) results = rerank(results, queryEmbedding, topK);
+        }
+        if (results.isEmpty()) return results;
+
+        resultCache.put(cacheKey, toHits(results));
+        return results;
+    }
+
+    /**
+     * Reciprocal-rank fusion: chunks are ordered by the sum of 1 / (rrf-k + rank) over
+     * the rankings they appear in; ties keep the vector order. Each returned hit
+     * carries its vector similarity, or NaN when only the full-text search found it.
+     */
+    private List<Map.Entry<String, Double>> fuse(List<Map.Entry<String, Double>> vector,
+                                                 List<Map.Entry<String, Double>> lexical) {
+        Map<String, Double> fused = new LinkedHashMap<>();
+        Map<String, Double> similarity = new HashMap<>();
+        for (List<Map.Entry<String, Double>> ranking : List.of(vector, lexical)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                fused.merge(ranking.get(rank).getKey(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        for (Map.Entry<String, Double> hit : vector) similarity.put(hit.getKey(), hit.getValue());
+        return fused.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
                 .limit(topK)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+                .map(entry -> Map.entry(entry.getKey(), similarity.getOrDefault(entry.getKey(), Double.NaN)))
+                .toList();
+    }
+
+    private static List<Map.Entry<String, Double>> toHits(List<ScoredChunk> results) {
+        return results.stream()
+                .map(scored -> Map.entry(scored.getChunk().getId(), scored.getScore()))
+                .toList();
+    }
+
+    // Content is only fetched for the top-k hits, in ranked order
+    private List<ScoredChunk> fetchChunks(List<Map.Entry<String, Double>> hits) {
+        List<String> ids = hits.stream().map(Map.Entry::getKey).toList();
+        Map<String, DocumentChunk> byId = chunkRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(DocumentChunk::getId, Function.identity()));
+        List<ScoredChunk> results = new ArrayList<>(hits.size());
+        for (Map.Entry<String, Double> hit : hits) {
+            DocumentChunk chunk = byId.get(hit.getKey());
+            if (chunk != null) results.add(new ScoredChunk(chunk, hit.getValue()));
+        }
+        return results;
+    }
+
+    // Called after the index is updated, so a search that sees the new version sees the new chunks
+    private void bumpVersion(String conversationId) {
+        versions.put(conversationId, versionSequence.incrementAndGet());
     }
 
     public void removeDocument(String conversationId, String documentId) {
         chunkRepository.deleteByDocumentId(documentId);
+
+        ConversationVectorIndex index = residentIndex(conversationId);
+        if (index != null) {
+            index.removeDocument(documentId);
+        }
+        bumpVersion(conversationId);
+    }
+
+    public void removeConversation(String conversationId) {
+        synchronized (indexes) {
+            indexes.remove(conversationId);
+        }
+        // The conversation is gone; its cached results age out of the LRU
+        versions.remove(conversationId);
+        graphStore.delete(conversationId);
+    }
+
+    /**
+     * Writes the conversation's HNSW graph to disk if it changed, e.g. after an upload.
+     */
+    public void persistIndex(String conversationId) {
+        ConversationVectorIndex index = residentIndex(conversationId);
+        if (index != null) graphStore.save(conversationId, index);
+    }
+
+    @PreDestroy
+    public void persistAll() {
+        graphBuilder.shutdownNow();
+        Map<String, ConversationVectorIndex> snapshot;
+        synchronized (indexes) {
+            snapshot = new LinkedHashMap<>(indexes);
+        }
+        snapshot.forEach(graphStore::save);
     }
 
     public int getChunkCount(String conversationId) {
-        return chunkRepository.findByConversationId(conversationId).size();
+        ConversationVectorIndex index = residentIndex(conversationId);
+        return index != null ? index.size() : (int) chunkRepository.countByConversationId(conversationId);
+    }
+
+    private ConversationVectorIndex residentIndex(String conversationId) {
+        synchronized (indexes) {
+            return indexes.get(conversationId);
+        }
+    }
+
+    /**
+     * Returns the resident index for the conversation, loading its embeddings from
+     * Postgres on first use. The index is registered (write-locked) before loading so
+     * that concurrent searches wait for it and concurrently added chunks are not lost.
+     */
+    private ConversationVectorIndex getIndex(String conversationId) {
+        ConversationVectorIndex index;
+        synchronized (indexes) {
+            index = indexes.get(conversationId);
+            if (index != null) return index;
+            index = new ConversationVectorIndex(kernel, embeddingCodec.getPrecision(), "sparse".equals(indexType));
+            index.beginLoad();
+            indexes.put(conversationId, index);
+        }
+
+        boolean loaded = false;
+        try {
+            long start = System.currentTimeMillis();
+            List<DocumentChunkRepository.ChunkEmbedding> rows =
+                    new ArrayList<>(chunkRepository.findEmbeddingsByConversationId(conversationId));
+            HnswGraphStore.StoredGraph stored = "hnsw".equals(indexType)
+                    ? graphStore.load(conversationId, hnswM, hnswEfConstruction) : null;
+            boolean restoreGraph = stored != null && orderLike(rows, stored.getChunkIds());
+            for (DocumentChunkRepository.ChunkEmbedding row : rows) {
+                index.add(row.getId(), row.getDocumentId(), decode(row));
+            }
+            if (restoreGraph) {
+                index.attachGraph(stored.getGraph());
+            }
+            log.info("Loaded vector index for conversation {} ({} chunks, graph restored: {}, {} ms)",
+                    conversationId, rows.size(), index.hasGraph(), System.currentTimeMillis() - start);
+            loaded = true;
+        } finally {
+            index.endLoad();
+            if (!loaded) {
+                synchronized (indexes) {
+                    indexes.remove(conversationId);
+                }
+            }
+        }
+
+        enforceMemoryBudget(conversationId);
+        return index;
+    }
+
+    /**
+     * True when the conversation's graph is ready to search. A missing graph (first
+     * time over hnsw.min-size, or dropped by a document delete) is built in the
+     * background while searches keep using the exact scan.
+     */
+    private boolean useGraph(String conversationId, ConversationVectorIndex index) {
+        if (!"hnsw".equals(indexType) || index.size() < hnswMinSize) return false;
+        if (index.hasGraph()) return true;
+
+        if (index.tryStartGraphBuild()) {
+            try {
+                graphBuilder.execute(() -> buildGraph(conversationId, index));
+            } catch (RejectedExecutionException e) {
+                index.endGraphBuild(); // Shutting down
+            }
+        }
+        return false;
+    }
+
+    private void buildGraph(String conversationId, ConversationVectorIndex index) {
+        try {
+            // Evicted or replaced while queued: nobody would search this graph
+            if (residentIndex(conversationId) != index || index.hasGraph()) return;
+            long start = System.currentTimeMillis();
+            if (!index.buildGraph(hnswM, hnswEfConstruction)) {
+                log.debug("Discarded HNSW graph for conversation {}: rows were removed during the build", conversationId);
+                return;
+            }
+            double recall = index.measureRecall(topK, hnswEfSearch, 20);
+            log.info("Built HNSW graph for conversation {} ({} chunks, {} ms, recall@{}={})",
+                    conversationId, index.size(), System.currentTimeMillis() - start, topK,
+                    String.format("%.3f", recall));
+            graphStore.save(conversationId, index);
+            enforceMemoryBudget(conversationId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to build HNSW graph for conversation {}: {}", conversationId, e.getMessage());
+        } finally {
+            index.endGraphBuild();
+        }
+    }
+
+    private List<Map.Entry<String, Double>> searchApproximate(ConversationVectorIndex index, double[] queryEmbedding, int k) {
+        List<Map.Entry<String, Double>> hits = index.searchApproximate(queryEmbedding, k, hnswEfSearch);
+        if (recallSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+            double recall = ConversationVectorIndex.recall(index.search(queryEmbedding, k), hits);
+            recallSummary.record(recall);
+            log.debug("HNSW recall@{} on sampled query: {}", k, recall);
+        }
+        return hits;
+    }
+
+    // Re-scoring of the candidates against their full-precision embeddings, in double precision
+    private List<ScoredChunk> rerank(List<ScoredChunk> candidates, double[] queryEmbedding, int k) {
+        List<float[]> vectors = exactEmbeddings(candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            candidates.get(i).setScore(cosineSimilarity(queryEmbedding, vectors.get(i)));
+        }
+        candidates.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return new ArrayList<>(candidates.subList(0, Math.min(k, candidates.size())));
     }
 
-    private double cosineSimilarity(double[] a, double[] b) {
+    /**
+     * Full-precision embeddings of the chunks, in order: the stored vector when its
+     * encoding is lossless, else the legacy float8[] column, else (int8 codes, the
+     * case re-ranking exists for) the content embedded again in one batch; embeddings
+     * are deterministic, so that is the vector the codes were quantized from.
+     */
+    private List<float[]> exactEmbeddings(List<ScoredChunk> scored) {
+        List<float[]> vectors = new ArrayList<>(scored.size());
+        List<Integer> missing = new ArrayList<>();
+        for (ScoredChunk result : scored) {
+            DocumentChunk chunk = result.getChunk();
+            if (EmbeddingCodec.isLossless(chunk.getEmbeddingData())) {
+                vectors.add(EmbeddingCodec.decode(chunk.getEmbeddingData()));
+            } else if (chunk.getEmbedding() != null) {
+                vectors.add(decode(null, chunk.getEmbedding()));
+            } else {
+                missing.add(vectors.size());
+                vectors.add(null);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<double[]> embedded = embeddingService.embedBatch(
+                    missing.stream().map(i -> scored.get(i).getChunk().getContent()).toList());
+            for (int j = 0; j < missing.size(); j++) {
+                vectors.set(missing.get(j), decode(null, embedded.get(j)));
+            }
+        }
+        return vectors;
+    }
+
+    private static double cosineSimilarity(double[] a, float[] b) {
         if (a == null || b == null || a.length != b.length) return 0.0;
         double dotProduct = 0.0, normA = 0.0, normB = 0.0;
         for (int i = 0; i < a.length; i++) {
@@ -72,4 +447,55 @@ public class VectorStoreService {
         double denominator = Math.sqrt(normA) * Math.sqrt(normB);
         return denominator == 0 ? 0.0 : dotProduct / denominator;
     }
+
+    private static float[] decode(DocumentChunkRepository.ChunkEmbedding row) {
+        return decode(row.getEmbeddingData(), row.getEmbedding());
+    }
+
+    // Rows written before the bytea column existed still carry the legacy float8[] embedding
+    private static float[] decode(byte[] embeddingData, double[] legacy) {
+        if (embeddingData != null) return EmbeddingCodec.decode(embeddingData);
+        if (legacy == null) return null;
+        float[] values = new float[legacy.length];
+        for (int i = 0; i < legacy.length; i++) values[i] = (float) legacy[i];
+        return values;
+    }
+
+    // True when the stored graph covers exactly these rows; reorders rows into graph node order
+    private boolean orderLike(List<DocumentChunkRepository.ChunkEmbedding> rows, List<String> chunkIds) {
+        if (rows.size() != chunkIds.size()) return false;
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < chunkIds.size(); i++) position.put(chunkIds.get(i), i);
+        for (DocumentChunkRepository.ChunkEmbedding row : rows) {
+            if (!position.containsKey(row.getId())) return false;
+            if (row.getEmbeddingData() == null && row.getEmbedding() == null) return false;
+        }
+        rows.sort(Comparator.comparingInt(row -> position.get(row.getId())));
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used conversations until the resident indexes fit
+     * into rag.index.memory-budget-mb. The conversation currently in use is kept.
+     * Graphs of evicted conversations are written to disk first.
+     */
+    private void enforceMemoryBudget(String activeConversationId) {
+        long budgetBytes = memoryBudgetMb * 1024 * 1024;
+        Map<String, ConversationVectorIndex> evicted = new LinkedHashMap<>();
+        synchronized (indexes) {
+            long total = indexes.values().stream().mapToLong(ConversationVectorIndex::estimatedBytes).sum();
+            Iterator<Map.Entry<String, ConversationVectorIndex>> it = indexes.entrySet().iterator();
+            while (total > budgetBytes && it.hasNext()) {
+                Map.Entry<String, ConversationVectorIndex> eldest = it.next();
+                if (eldest.getKey().equals(activeConversationId)) continue;
+                total -= eldest.getValue().estimatedBytes();
+                evicted.put(eldest.getKey(), eldest.getValue());
+                it.remove();
+            }
+        }
+        evicted.forEach((conversationId, index) -> {
+            graphStore.save(conversationId, index);
+            log.debug("Evicted vector index for conversation {}", conversationId);
+        });
+    }
 }
@@ -0,0 +1,40 @@
+package com.ragchat.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A cancel flag that can also run actions when it is set, for work that is blocked
+ * and would not notice a polled flag (e.g. a read waiting on the network).
+ */
+public class Cancellation implements BooleanSupplier {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) listeners.forEach(Runnable::run);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return cancelled.get();
+    }
+
+    /**
+     * Runs {@code action} when cancelled, right away if that already happened. It may
+     * run twice when cancelling races with registering, so it must be idempotent.
+     * Returns a handle that unregisters it.
+     */
+    public Runnable onCancel(Runnable action) {
+        listeners.add(action);
+        if (cancelled.get()) action.run();
+        return () -> listeners.remove(action);
+    }
+}
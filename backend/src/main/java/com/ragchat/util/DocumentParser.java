@@ -2,15 +2,17 @@ package com.ragchat.util;
 
 import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.Path;
 
 @Component
 public class DocumentParser {
@@ -23,81 +25,32 @@ public class DocumentParser {
     @Value("${rag.chunk-overlap:50}")
     private int chunkOverlap;
 
-    /**
-     * Extracts text from any supported document type using Apache Tika.
-     */
-    public String extractText(MultipartFile file) throws IOException, TikaException {
-        try (InputStream stream = file.getInputStream()) {
-            return tika.parseToString(stream);
-        }
+    /** Receives each chunk with the number of bytes of the file the parser has read so far. */
+    public interface ChunkSink {
+        void accept(String section, String content, long bytesRead);
     }
 
     /**
-     * Splits text into pieces, attempting to detect sections.
-     * Returns a list of Map.Entry<SectionName, ContentChunk>
+     * Parses a spooled upload and hands each chunk to the sink while parsing is still
+     * running. Tika writes the body text straight into a {@link SectionChunker}, so the
+     * document is never held as one String and no write limit applies. Bytes read
+     * only advance for formats parsed as a stream (text, HTML, ...); parsers that open
+     * the file by path themselves (PDF, Office containers) leave them near zero.
+     *
+     * @return the number of characters extracted
      */
-    public List<Map.Entry<String, String>> splitIntoSectionedChunks(String text) {
-        List<Map.Entry<String, String>> chunks = new ArrayList<>();
-        if (text == null || text.isBlank()) {
-            return chunks;
-        }
-
-        // 1. Split into lines to find headers
-        String[] lines = text.split("\\r?\\n");
-        String currentSection = "Introduction"; // Default section
-        StringBuilder currentBuffer = new StringBuilder();
-
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (trimmed.isEmpty()) continue;
-
-            // Simple heuristic for headers:
-            // - Short (under 60 chars)
-            // - Starts with number, or is all UPPERCASE, or doesn't end with punctuation
-            boolean isHeader = trimmed.length() < 60 && 
-                               (trimmed.matches("^\\d+\\..*") || 
-                                trimmed.matches("^[A-ZА-Я0-9\\s\\-]+$") || 
-                                !trimmed.matches(".*[.!?]$"));
-
-            if (isHeader) {
-                // If we have content in the buffer, save it with the OLD section
-                if (currentBuffer.length() > 0) {
-                    processBufferToChunks(currentBuffer.toString(), currentSection, chunks);
-                    currentBuffer.setLength(0);
-                }
-                // Update current section to new header
-                currentSection = trimmed;
-            } else {
-                if (currentBuffer.length() > 0) currentBuffer.append(" ");
-                currentBuffer.append(trimmed);
-            }
-        }
-
-        // Process remaining buffer
-        if (currentBuffer.length() > 0) {
-            processBufferToChunks(currentBuffer.toString(), currentSection, chunks);
-        }
-
-        return chunks;
-    }
-
-    private void processBufferToChunks(String text, String section, List<Map.Entry<String, String>> chunks) {
-        String[] words = text.split("\\s+");
-        if (words.length <= chunkSize) {
-            chunks.add(Map.entry(section, text));
-            return;
-        }
-
-        int step = chunkSize - chunkOverlap;
-        for (int i = 0; i < words.length; i += step) {
-            int end = Math.min(i + chunkSize, words.length);
-            StringBuilder chunk = new StringBuilder();
-            for (int j = i; j < end; j++) {
-                if (j > i) chunk.append(" ");
-                chunk.append(words[j]);
-            }
-            chunks.add(Map.entry(section, chunk.toString()));
-            if (end == words.length) break;
+    public long streamSectionedChunks(Path file, ChunkSink sink) throws IOException, TikaException {
+        Parser parser = tika.getParser();
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser); // Also extract embedded documents, like parseToString
+        try (TikaInputStream stream = TikaInputStream.get(file)) {
+            SectionChunker chunker = new SectionChunker(chunkSize, chunkOverlap,
+                    (section, content) -> sink.accept(section, content, stream.getPosition()));
+            parser.parse(stream, new BodyContentHandler(chunker), new Metadata(), context);
+            chunker.close();
+            return chunker.getCharacterCount();
+        } catch (SAXException e) {
+            throw new TikaException("Unexpected SAX processing failure", e);
         }
     }
 }
@@ -0,0 +1,118 @@
+package com.ragchat.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary encoding for chunk embeddings (stored as bytea).
+ * Layout: format byte, dimension (int), then either dimension float32 values, a
+ * float scale followed by dimension int8 codes, or (for mostly-zero FLOAT32 vectors)
+ * a non-zero count followed by (short index, float value) pairs. Little-endian.
+ * FLOAT32 is at most 2 KB for a 512-dim vector, INT8 about 0.5 KB, versus 4 KB for float8[].
+ */
+@Component
+public class EmbeddingCodec {
+
+    public enum Precision { FLOAT32, INT8 }
+
+    private static final byte FORMAT_FLOAT32 = 1;
+    private static final byte FORMAT_INT8 = 2;
+    private static final byte FORMAT_SPARSE = 3;
+    private static final int HEADER_BYTES = 1 + Integer.BYTES;
+
+    private final Precision precision;
+
+    public EmbeddingCodec(@Value("${rag.embedding.precision:float32}") String precision) {
+        this.precision = Precision.valueOf(precision.trim().toUpperCase());
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /** Encodes with the configured precision. */
+    public byte[] encode(double[] embedding) {
+        return encode(embedding, precision);
+    }
+
+    public static byte[] encode(double[] embedding, Precision precision) {
+        if (embedding == null) return null;
+        float[] values = new float[embedding.length];
+        for (int i = 0; i < embedding.length; i++) values[i] = (float) embedding[i];
+
+        if (precision == Precision.INT8) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + Float.BYTES + values.length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(FORMAT_INT8).putInt(values.length);
+            byte[] codes = new byte[values.length];
+            buffer.putFloat(quantize(values, 0, values.length, codes, 0));
+            buffer.put(codes);
+            return buffer.array();
+        }
+
+        SparseVector sparse = SparseVector.fromDense(values);
+        int sparseBytes = Integer.BYTES + sparse.size() * (Short.BYTES + Float.BYTES);
+        if (sparseBytes < values.length * Float.BYTES) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + sparseBytes).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(FORMAT_SPARSE).putInt(values.length).putInt(sparse.size());
+            for (int i = 0; i < sparse.size(); i++) {
+                buffer.putShort((short) sparse.getIndices()[i]).putFloat(sparse.getValues()[i]);
+            }
+            return buffer.array();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(FORMAT_FLOAT32).putInt(values.length);
+        for (float v : values) buffer.putFloat(v);
+        return buffer.array();
+    }
+
+    /** Whether the encoding keeps the float32 values exactly (dense or sparse float32, not int8). */
+    public static boolean isLossless(byte[] data) {
+        return data != null && data.length >= HEADER_BYTES && (data[0] == FORMAT_FLOAT32 || data[0] == FORMAT_SPARSE);
+    }
+
+    /** Decodes either format back to floats (int8 codes are multiplied by their scale). */
+    public static float[] decode(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        byte format = buffer.get();
+        int dimension = buffer.getInt();
+        float[] values = new float[dimension];
+        if (format == FORMAT_INT8) {
+            float scale = buffer.getFloat();
+            for (int i = 0; i < dimension; i++) values[i] = buffer.get() * scale;
+        } else if (format == FORMAT_FLOAT32) {
+            for (int i = 0; i < dimension; i++) values[i] = buffer.getFloat();
+        } else if (format == FORMAT_SPARSE) {
+            int nonZero = buffer.getInt();
+            for (int i = 0; i < nonZero; i++) {
+                int index = buffer.getShort() & 0xFFFF;
+                values[index] = buffer.getFloat();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown embedding format " + format);
+        }
+        return values;
+    }
+
+    /**
+     * Symmetric scalar quantization of {@code length} floats into int8 codes.
+     * Returns the scale such that {@code value ≈ code * scale}.
+     */
+    public static float quantize(float[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        float maxAbs = 0;
+        for (int i = 0; i < length; i++) maxAbs = Math.max(maxAbs, Math.abs(src[srcOffset + i]));
+        if (maxAbs == 0) {
+            for (int i = 0; i < length; i++) dst[dstOffset + i] = 0;
+            return 0;
+        }
+        float scale = maxAbs / 127f;
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = (byte) Math.round(src[srcOffset + i] / scale);
+        }
+        return scale;
+    }
+}
@@ -0,0 +1,328 @@
+package com.ragchat.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate nearest-neighbour search.
+ * Nodes are the row numbers of an external vector store; the graph only keeps links
+ * and asks {@link Vectors} for similarities (higher is closer).
+ * Not thread-safe: callers serialize adds against searches.
+ */
+public class HnswGraph {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** Access to the stored vectors the graph is built over. */
+    public interface Vectors {
+        /** Similarity between a query vector and stored node {@code node}. */
+        float score(float[] query, int node);
+
+        /** A (possibly decoded) copy of the stored vector of {@code node}. */
+        float[] vector(int node);
+    }
+
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    // links[node][level] = {count, neighbour...}
+    private int[][][] links = new int[0][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswGraph(int m, int efConstruction, long seed) {
+        this.m = Math.max(2, m);
+        this.maxConnections0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1 / Math.log(this.m);
+        this.random = new Random(seed);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    /** True when a graph constructed with these parameters would have this one's settings. */
+    public boolean builtWith(int m, int efConstruction) {
+        return this.m == Math.max(2, m) && this.efConstruction == Math.max(this.m, efConstruction);
+    }
+
+    /**
+     * Inserts the next node. Nodes must be added in row order (0, 1, 2, ...).
+     */
+    public void add(int node, Vectors vectors) {
+        if (node != size) {
+            throw new IllegalArgumentException("Expected node " + size + " but got " + node);
+        }
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        ensureCapacity(node + 1);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] query = vectors.vector(node);
+        int current = entryPoint;
+        float currentScore = vectors.score(query, current);
+        for (int l = maxLevel; l > level; l--) {
+            int[] best = greedyStep(query, current, currentScore, l, vectors);
+            current = best[0];
+            currentScore = Float.intBitsToFloat(best[1]);
+        }
+
+        BitSet visited = new BitSet(size);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(query, current, efConstruction, l, vectors, visited);
+            List<Candidate> neighbours = selectNeighbours(candidates, maxConnections(l), vectors);
+            for (Candidate neighbour : neighbours) {
+                connect(node, neighbour.node, l);
+                connect(neighbour.node, node, l);
+                if (count(neighbour.node, l) > maxConnections(l)) {
+                    shrink(neighbour.node, l, vectors);
+                }
+            }
+            current = candidates.get(0).node;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Returns up to {@code k} nodes closest to the query, best first. Scores are
+     * written into {@code scoresOut} when it is not null.
+     */
+    public int[] search(float[] query, int k, int ef, Vectors vectors, float[] scoresOut) {
+        if (entryPoint < 0 || k <= 0) return new int[0];
+
+        int current = entryPoint;
+        float currentScore = vectors.score(query, current);
+        for (int l = maxLevel; l > 0; l--) {
+            int[] best = greedyStep(query, current, currentScore, l, vectors);
+            current = best[0];
+            currentScore = Float.intBitsToFloat(best[1]);
+        }
+
+        List<Candidate> candidates = searchLayer(query, current, Math.max(ef, k), 0, vectors, new BitSet(size));
+        int n = Math.min(k, candidates.size());
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = candidates.get(i).node;
+            if (scoresOut != null) scoresOut[i] = candidates.get(i).score;
+        }
+        return result;
+    }
+
+    /** Approximate heap footprint of the link arrays. */
+    public long estimatedBytes() {
+        long bytes = (long) links.length * 16;
+        for (int i = 0; i < size; i++) {
+            for (int[] level : links[i]) bytes += 16 + (long) level.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeByte(links[node].length);
+            for (int[] level : links[node]) {
+                out.writeShort(level[0]);
+                for (int i = 1; i <= level[0]; i++) out.writeInt(level[i]);
+            }
+        }
+    }
+
+    public static HnswGraph readFrom(DataInputStream in, long seed) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported HNSW format version " + version);
+        }
+        HnswGraph graph = new HnswGraph(in.readInt(), in.readInt(), seed);
+        int size = in.readInt();
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        graph.ensureCapacity(size);
+        for (int node = 0; node < size; node++) {
+            int levels = in.readUnsignedByte();
+            graph.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int count = in.readUnsignedShort();
+                int[] level = new int[Math.max(count, graph.maxConnections(l)) + 1];
+                level[0] = count;
+                for (int i = 1; i <= count; i++) level[i] = in.readInt();
+                graph.links[node][l] = level;
+            }
+        }
+        graph.size = size;
+        return graph;
+    }
+
+    // Returns {node, floatBits(score)} of the best node reachable greedily on this level
+    private int[] greedyStep(float[] query, int current, float currentScore, int level, Vectors vectors) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float score = vectors.score(query, candidate);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return new int[]{current, Float.floatToIntBits(currentScore)};
+    }
+
+    // Beam search on one level; returns candidates ordered best first
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level, Vectors vectors, BitSet visited) {
+        visited.clear();
+        visited.set(entry);
+        Candidate start = new Candidate(entry, vectors.score(query, entry));
+
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>((a, b) -> Float.compare(b.score, a.score));
+        PriorityQueue<Candidate> found = new PriorityQueue<>((a, b) -> Float.compare(a.score, b.score));
+        toVisit.add(start);
+        found.add(start);
+
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (found.size() >= ef && closest.score < found.peek().score) break;
+
+            int[] nodeLinks = level < links[closest.node].length ? links[closest.node][level] : null;
+            if (nodeLinks == null) continue;
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbour = nodeLinks[i];
+                if (visited.get(neighbour)) continue;
+                visited.set(neighbour);
+                float score = vectors.score(query, neighbour);
+                if (found.size() < ef || score > found.peek().score) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    toVisit.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+
+        List<Candidate> ordered = new ArrayList<>(found);
+        ordered.sort((a, b) -> Float.compare(b.score, a.score));
+        return ordered;
+    }
+
+    // Neighbour selection heuristic: keep a candidate only if it is closer to the new
+    // node than to any neighbour already selected, which keeps links diverse
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max, Vectors vectors) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<float[]> selectedVectors = new ArrayList<>(max);
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) break;
+            boolean diverse = true;
+            for (float[] kept : selectedVectors) {
+                if (vectors.score(kept, candidate.node) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+                selectedVectors.add(vectors.vector(candidate.node));
+            }
+        }
+        // Fill up with the closest remaining candidates if the heuristic pruned too much
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) break;
+            if (!selected.contains(candidate)) selected.add(candidate);
+        }
+        return selected;
+    }
+
+    // Drops the weakest link of an overflowing neighbour list. Cheaper than re-running
+    // the selection heuristic on every overflow, which dominated build time
+    private void shrink(int node, int level, Vectors vectors) {
+        int[] nodeLinks = links[node][level];
+        float[] base = vectors.vector(node);
+        int weakest = 1;
+        float weakestScore = Float.POSITIVE_INFINITY;
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            float score = vectors.score(base, nodeLinks[i]);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = i;
+            }
+        }
+        nodeLinks[weakest] = nodeLinks[nodeLinks[0]];
+        nodeLinks[0]--;
+    }
+
+    private void connect(int from, int to, int level) {
+        int[] nodeLinks = links[from][level];
+        int count = nodeLinks[0];
+        for (int i = 1; i <= count; i++) {
+            if (nodeLinks[i] == to) return;
+        }
+        if (count + 1 >= nodeLinks.length) {
+            // One spare slot so the list can overflow before it is shrunk
+            nodeLinks = Arrays.copyOf(nodeLinks, nodeLinks.length + 1);
+            links[from][level] = nodeLinks;
+        }
+        nodeLinks[count + 1] = to;
+        nodeLinks[0] = count + 1;
+    }
+
+    private int count(int node, int level) {
+        return links[node][level][0];
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnections0 : m;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes <= links.length) return;
+        int capacity = Math.max(64, links.length * 2);
+        while (capacity < nodes) capacity *= 2;
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    private static final class Candidate {
+        final int node;
+        final float score;
+
+        Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+}
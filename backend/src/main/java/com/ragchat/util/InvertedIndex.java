@@ -0,0 +1,129 @@
+package com.ragchat.util;
+
+import java.util.Arrays;
+
+/**
+ * Posting lists per hash bucket: for every bucket, the rows with a non-zero value in
+ * it and that value. Scoring a query only walks the lists of the buckets the query
+ * actually hits, so the cost follows the query's non-zeros instead of rows x dimension.
+ * Not thread-safe: callers serialize updates against searches.
+ */
+public class InvertedIndex {
+
+    private static final int INITIAL_POSTINGS = 8;
+
+    private final int[][] postingRows;
+    private final float[][] postingValues;
+    private final int[] postingSizes;
+
+    public InvertedIndex(int buckets) {
+        this.postingRows = new int[buckets][];
+        this.postingValues = new float[buckets][];
+        this.postingSizes = new int[buckets];
+    }
+
+    public void add(int row, SparseVector vector) {
+        int[] indices = vector.getIndices();
+        float[] values = vector.getValues();
+        for (int i = 0; i < indices.length; i++) {
+            int bucket = indices[i];
+            int n = postingSizes[bucket];
+            if (postingRows[bucket] == null) {
+                postingRows[bucket] = new int[INITIAL_POSTINGS];
+                postingValues[bucket] = new float[INITIAL_POSTINGS];
+            } else if (n == postingRows[bucket].length) {
+                postingRows[bucket] = Arrays.copyOf(postingRows[bucket], n * 2);
+                postingValues[bucket] = Arrays.copyOf(postingValues[bucket], n * 2);
+            }
+            postingRows[bucket][n] = row;
+            postingValues[bucket][n] = values[i];
+            postingSizes[bucket] = n + 1;
+        }
+    }
+
+    /**
+     * Renumbers rows after a compaction: {@code newRow[old]} is the new row number,
+     * or -1 when the row was removed.
+     */
+    public void remap(int[] newRow) {
+        for (int bucket = 0; bucket < postingSizes.length; bucket++) {
+            int write = 0;
+            for (int read = 0; read < postingSizes[bucket]; read++) {
+                int mapped = newRow[postingRows[bucket][read]];
+                if (mapped < 0) continue;
+                postingRows[bucket][write] = mapped;
+                postingValues[bucket][write] = postingValues[bucket][read];
+                write++;
+            }
+            postingSizes[bucket] = write;
+        }
+    }
+
+    /**
+     * Accumulates dot products of the query with every row sharing a bucket with it
+     * and offers the touched rows to {@code top}. Scores are accumulated in a hash
+     * table sized by the matched postings, so the cost does not grow with {@code rows}.
+     * Every other row scores exactly 0; up to {@code top}'s capacity of them are offered
+     * too, so the result is the one a full scan gives, also when nothing matched.
+     */
+    public void search(SparseVector query, int rows, TopK top) {
+        int[] indices = query.getIndices();
+        float[] values = query.getValues();
+        long matched = 0;
+        for (int bucket : indices) matched += postingSizes[bucket];
+
+        // Open addressing, row -> score; at most half full
+        int capacity = Integer.highestOneBit((int) Math.max(8, Math.min(matched, rows) * 2 - 1)) << 1;
+        int mask = capacity - 1;
+        int[] slotRows = new int[capacity];
+        float[] slotScores = new float[capacity];
+        Arrays.fill(slotRows, -1);
+
+        for (int i = 0; i < indices.length; i++) {
+            int bucket = indices[i];
+            int n = postingSizes[bucket];
+            if (n == 0) continue;
+            float q = values[i];
+            int[] bucketRows = postingRows[bucket];
+            float[] bucketValues = postingValues[bucket];
+            for (int p = 0; p < n; p++) {
+                int row = bucketRows[p];
+                int slot = slot(row, mask);
+                while (slotRows[slot] != -1 && slotRows[slot] != row) slot = (slot + 1) & mask;
+                slotRows[slot] = row;
+                slotScores[slot] += q * bucketValues[p];
+            }
+        }
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (slotRows[slot] != -1) top.offer(slotRows[slot], slotScores[slot]);
+        }
+        int zeros = 0;
+        for (int row = 0; row < rows && zeros < top.capacity(); row++) {
+            if (contains(slotRows, mask, row)) continue;
+            top.offer(row, 0f);
+            zeros++;
+        }
+    }
+
+    private static boolean contains(int[] slotRows, int mask, int row) {
+        for (int slot = slot(row, mask); slotRows[slot] != -1; slot = (slot + 1) & mask) {
+            if (slotRows[slot] == row) return true;
+        }
+        return false;
+    }
+
+    private static int slot(int row, int mask) {
+        int h = row * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** Approximate heap footprint of the posting arrays. */
+    public long estimatedBytes() {
+        long bytes = (long) postingSizes.length * 40;
+        for (int[] rows : postingRows) {
+            if (rows != null) bytes += (long) rows.length * (Integer.BYTES + Float.BYTES);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,208 @@
+package com.ragchat.util;
+
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental section detection and sliding-window chunking. Extracted text is
+ * written in as it is produced and every chunk is handed to the sink as soon as it
+ * is complete, so only the current line and the current window are held in memory.
+ * Produces exactly the chunks of splitting the whole text at once: lines are split
+ * on "\n", trimmed and classified as headers or content, and a section with more
+ * than chunkSize words is cut into windows of chunkSize words that overlap by
+ * chunkOverlap words.
+ */
+public class SectionChunker extends Writer {
+
+    /** Receives each chunk as soon as it is complete. */
+    public interface Sink {
+        void accept(String section, String content);
+    }
+
+    private static final Pattern NUMBERED = Pattern.compile("^\\d+\\..*");
+    private static final Pattern UPPERCASE = Pattern.compile("^[A-ZА-Я0-9\\s\\-]+$");
+    private static final Pattern SENTENCE_END = Pattern.compile(".*[.!?]$");
+    private static final int MAX_HEADER_LENGTH = 60;
+
+    private final int chunkSize;
+    private final int step;
+    private final Sink sink;
+
+    private String currentSection = "Introduction"; // Default section
+    private long characters;
+
+    // Current line; once it is known to be content (too long to be a header) it is
+    // streamed into the section instead, holding back only trailing whitespace
+    private final StringBuilder line = new StringBuilder();
+    private int lineFirst = -1;
+    private int lineLast = -1;
+    private boolean lineStreaming;
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+
+    // Current section: the raw text while it might still fit in one chunk, and the
+    // words of the current window once it does not
+    private boolean sectionEmpty = true;
+    private final StringBuilder raw = new StringBuilder();
+    private boolean windowed;
+    private final ArrayDeque<String> words = new ArrayDeque<>();
+    private final StringBuilder word = new StringBuilder();
+    private int wordCount;
+
+    public SectionChunker(int chunkSize, int chunkOverlap, Sink sink) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.step = Math.max(1, this.chunkSize - chunkOverlap);
+        this.sink = sink;
+    }
+
+    /** Number of characters written so far. */
+    public long getCharacterCount() {
+        return characters;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+        characters += length;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c = buffer[i];
+            if (c == '\n') {
+                endLine();
+            } else if (lineStreaming) {
+                if (c <= ' ') {
+                    pendingWhitespace.append(c);
+                } else {
+                    appendContent(pendingWhitespace);
+                    pendingWhitespace.setLength(0);
+                    appendContent(c);
+                }
+            } else {
+                if (c > ' ') {
+                    if (lineFirst < 0) lineFirst = line.length();
+                    lineLast = line.length();
+                }
+                line.append(c);
+                if (lineFirst >= 0 && lineLast - lineFirst + 1 >= MAX_HEADER_LENGTH) {
+                    startStreamingLine();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /** Ends the last line and section and emits the remaining chunks. */
+    @Override
+    public void close() {
+        endLine();
+        endSection();
+    }
+
+    private void endLine() {
+        if (lineStreaming) {
+            lineStreaming = false;
+            pendingWhitespace.setLength(0); // Trailing whitespace is trimmed
+        } else if (lineFirst >= 0) {
+            processLine(line.substring(lineFirst, lineLast + 1));
+        }
+        line.setLength(0);
+        lineFirst = -1;
+        lineLast = -1;
+    }
+
+    private void processLine(String trimmed) {
+        // Simple heuristic for headers:
+        // - Short (under 60 chars)
+        // - Starts with number, or is all UPPERCASE, or doesn't end with punctuation
+        boolean isHeader = trimmed.length() < MAX_HEADER_LENGTH &&
+                           (NUMBERED.matcher(trimmed).matches() ||
+                            UPPERCASE.matcher(trimmed).matches() ||
+                            !SENTENCE_END.matcher(trimmed).matches());
+
+        if (isHeader) {
+            // Content collected so far belongs to the OLD section
+            endSection();
+            currentSection = trimmed;
+        } else {
+            startContentLine();
+            appendContent(trimmed);
+        }
+    }
+
+    // The line is long enough that it cannot be a header, so its content can be
+    // passed on without waiting for the line to end
+    private void startStreamingLine() {
+        lineStreaming = true;
+        startContentLine();
+        appendContent(line.subSequence(lineFirst, lineLast + 1));
+        pendingWhitespace.append(line, lineLast + 1, line.length());
+        line.setLength(0);
+    }
+
+    private void startContentLine() {
+        if (!sectionEmpty) appendContent(' ');
+        sectionEmpty = false;
+    }
+
+    private void appendContent(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) appendContent(text.charAt(i));
+    }
+
+    private void appendContent(char c) {
+        if (!windowed) raw.append(c);
+        if (isWordSeparator(c)) {
+            endWord();
+        } else {
+            word.append(c);
+        }
+    }
+
+    private void endWord() {
+        if (word.length() == 0) return;
+        words.addLast(word.toString());
+        word.setLength(0);
+        wordCount++;
+        if (wordCount > chunkSize && !windowed) {
+            windowed = true;
+            raw.setLength(0);
+        }
+        // A full window is only final once a word after it exists
+        while (words.size() > chunkSize) {
+            emitWindow(chunkSize);
+            for (int i = 0; i < step && !words.isEmpty(); i++) words.removeFirst();
+        }
+    }
+
+    private void endSection() {
+        if (sectionEmpty) return;
+        endWord();
+        if (windowed) {
+            emitWindow(words.size());
+        } else {
+            sink.accept(currentSection, raw.toString());
+        }
+        sectionEmpty = true;
+        raw.setLength(0);
+        windowed = false;
+        words.clear();
+        wordCount = 0;
+    }
+
+    private void emitWindow(int count) {
+        StringBuilder chunk = new StringBuilder();
+        int i = 0;
+        for (String w : words) {
+            if (i == count) break;
+            if (i > 0) chunk.append(' ');
+            chunk.append(w);
+            i++;
+        }
+        sink.accept(currentSection, chunk.toString());
+    }
+
+    // The characters matched by \s
+    private static boolean isWordSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
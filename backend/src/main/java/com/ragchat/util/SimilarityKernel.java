@@ -0,0 +1,72 @@
+package com.ragchat.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dot-product kernel over L2-normalized float vectors, so the dot product is the
+ * cosine similarity and norms never have to be recomputed per pair.
+ * Implementations must not allocate per call.
+ */
+public interface SimilarityKernel {
+
+    /** Dot product of {@code length} floats starting at the given offsets. */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Dot product of a float query with {@code length} int8 codes starting at
+     * {@code codesOffset}. The caller multiplies by the row's quantization scale.
+     */
+    float dotInt8(float[] query, byte[] codes, int codesOffset, int length);
+
+    /**
+     * Scores the query against rows {@code [fromRow, toRow)} of a packed row-major
+     * matrix, writing one score per row into {@code out} starting at index 0.
+     */
+    default void scoreRows(float[] query, float[] matrix, int dimension, int fromRow, int toRow, float[] out) {
+        for (int row = fromRow; row < toRow; row++) {
+            out[row - fromRow] = dot(query, 0, matrix, row * dimension, dimension);
+        }
+    }
+
+    /**
+     * Like {@link #scoreRows} for an int8 matrix with one scale per row.
+     */
+    default void scoreRowsInt8(float[] query, byte[] codes, float[] scales, int dimension, int fromRow, int toRow, float[] out) {
+        for (int row = fromRow; row < toRow; row++) {
+            out[row - fromRow] = dotInt8(query, codes, row * dimension, dimension) * scales[row];
+        }
+    }
+
+    /**
+     * Returns the Vector API kernel when requested and the jdk.incubator.vector module
+     * is available (run with --add-modules jdk.incubator.vector), otherwise the scalar one.
+     */
+    static SimilarityKernel create(boolean preferSimd) {
+        Logger log = LoggerFactory.getLogger(SimilarityKernel.class);
+        if (preferSimd) {
+            try {
+                SimilarityKernel kernel = (SimilarityKernel) Class.forName("com.ragchat.util.VectorApiSimilarityKernel")
+                        .getDeclaredConstructor().newInstance();
+                log.info("Using SIMD similarity kernel ({})", kernel);
+                return kernel;
+            } catch (Throwable e) {
+                // NoClassDefFoundError when the incubator module was not added at runtime
+                log.info("Vector API not available ({}), using scalar similarity kernel", e.toString());
+            }
+        }
+        return new ScalarSimilarityKernel();
+    }
+
+    /** Scales the vector in place to unit length; zero vectors are left unchanged. */
+    static void normalize(float[] vector, int offset, int length) {
+        double norm = 0;
+        for (int i = 0; i < length; i++) {
+            float v = vector[offset + i];
+            norm += v * v;
+        }
+        if (norm == 0) return;
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < length; i++) vector[offset + i] *= inverse;
+    }
+}
@@ -0,0 +1,251 @@
+package com.ragchat.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Picks the most keyword-dense window of a chunk as its source snippet.
+ * The keywords (words over 3 characters or containing a digit) are compiled once
+ * into an Aho-Corasick automaton, so each chunk is scanned a single time no matter
+ * how many keywords there are; the densest window is then found with two pointers
+ * over the sorted match positions.
+ * Matches what one regex per keyword found: per keyword, non-overlapping matches
+ * from left to right, and keywords with digits only match where they are not
+ * directly preceded or followed by another digit. Instances are immutable and can
+ * be shared between threads.
+ */
+public class SnippetExtractor {
+
+    private static final int WINDOW_SIZE = 200;
+    private static final int CONTEXT_BEFORE = 40;
+    private static final int FALLBACK_LENGTH = 150;
+
+    private final int keywordCount;
+    private final int[] keywordLength;
+    private final boolean[] numeric;
+
+    // Automaton: goto transitions, failure links, the keyword ending at each node (or -1),
+    // and the nearest node on the failure chain that ends a keyword (or -1)
+    private final Transitions transitions = new Transitions();
+    private int[] fail;
+    private int[] output;
+    private int[] outputLink;
+
+    public SnippetExtractor(String query) {
+        // Extract keywords: words > 3 chars OR digits
+        Set<String> unique = new LinkedHashSet<>();
+        for (String word : query.toLowerCase().split("\\s+")) {
+            if (word.length() > 3 || isNumeric(word)) unique.add(word);
+        }
+        List<String> keywords = new ArrayList<>(unique);
+
+        this.keywordCount = keywords.size();
+        this.keywordLength = new int[keywordCount];
+        this.numeric = new boolean[keywordCount];
+        for (int k = 0; k < keywordCount; k++) {
+            keywordLength[k] = keywords.get(k).length();
+            numeric[k] = isNumeric(keywords.get(k));
+        }
+        build(keywords);
+    }
+
+    public String extract(String content) {
+        if (content == null || content.isEmpty()) return "";
+        if (keywordCount == 0) return fallback(content);
+
+        int[] matches = findMatches(content.toLowerCase());
+        int count = matches.length;
+        if (count == 0) return fallback(content);
+        Arrays.sort(matches);
+
+        // Densest window: the one starting at a match that covers the most matches.
+        // Window ends only move forward as starts do, so this is a single pass
+        int bestStart = matches[0];
+        int maxDensity = 0;
+        int end = 0;
+        for (int i = 0; i < count; i++) {
+            int windowEnd = matches[i] + WINDOW_SIZE;
+            if (end < i) end = i;
+            while (end < count && matches[end] < windowEnd) end++;
+            if (end - i > maxDensity) {
+                maxDensity = end - i;
+                bestStart = matches[i];
+            }
+        }
+
+        // Extract best window
+        int start = Math.max(0, bestStart - CONTEXT_BEFORE); // Add some context before
+        int stop = Math.min(content.length(), start + WINDOW_SIZE);
+
+        // Adjust start if we hit end boundary
+        if (stop == content.length()) {
+            start = Math.max(0, stop - WINDOW_SIZE);
+        }
+
+        String snippet = content.substring(start, stop);
+
+        // Trim edges cleanly
+        if (start > 0) snippet = "..." + snippet.substring(snippet.indexOf(' ') + 1);
+        if (stop < content.length()) snippet = snippet.substring(0, snippet.lastIndexOf(' ')) + "...";
+
+        return snippet;
+    }
+
+    // Start positions of all accepted keyword matches, one scan over the text
+    private int[] findMatches(String text) {
+        int[] matches = new int[16];
+        int count = 0;
+        int[] nextAllowed = new int[keywordCount]; // Per keyword: end of its last match
+
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transitions.get(state, c)) < 0 && state != 0) state = fail[state];
+            state = Math.max(next, 0);
+
+            for (int node = output[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                int k = output[node];
+                int start = i + 1 - keywordLength[k];
+                if (start < nextAllowed[k]) continue; // Overlaps this keyword's previous match
+                if (numeric[k] && (isDigit(text, start - 1) || isDigit(text, i + 1))) continue;
+                nextAllowed[k] = i + 1;
+                if (count == matches.length) matches = Arrays.copyOf(matches, count * 2);
+                matches[count++] = start;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    private void build(List<String> keywords) {
+        int capacity = 1;
+        for (String keyword : keywords) capacity += keyword.length();
+        fail = new int[capacity];
+        output = new int[capacity];
+        outputLink = new int[capacity];
+        Arrays.fill(output, -1);
+        Arrays.fill(outputLink, -1);
+
+        // Trie; children are recorded per node so failure links can be set breadth-first
+        int nodes = 1;
+        int[] firstChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        char[] edge = new char[capacity];
+        Arrays.fill(firstChild, -1);
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                int next = transitions.get(state, c);
+                if (next < 0) {
+                    next = nodes++;
+                    transitions.put(state, c, next);
+                    edge[next] = c;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                }
+                state = next;
+            }
+            output[state] = k;
+        }
+
+        int[] queue = new int[nodes];
+        int head = 0, tail = 0;
+        for (int child = firstChild[0]; child >= 0; child = nextSibling[child]) queue[tail++] = child;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                int f = fail[node];
+                int next;
+                while ((next = transitions.get(f, edge[child])) < 0 && f != 0) f = fail[f];
+                fail[child] = Math.max(next, 0);
+                outputLink[child] = output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /** The snippet used when no keyword matches: the start of the content. */
+    public static String fallback(String content) {
+        if (content == null) return "";
+        return content.length() > FALLBACK_LENGTH ? content.substring(0, FALLBACK_LENGTH) + "..." : content;
+    }
+
+    // What ".*\\d.*" accepts: an ASCII digit, and no line terminator (which '.' does not match)
+    private static boolean isNumeric(String word) {
+        boolean digit = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return false;
+            if (c >= '0' && c <= '9') digit = true;
+        }
+        return digit;
+    }
+
+    private static boolean isDigit(String text, int index) {
+        if (index < 0 || index >= text.length()) return false;
+        char c = text.charAt(index);
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Open-addressing (node, char) -> node map, so transitions need no boxing and
+     * no per-node tables.
+     */
+    private static class Transitions {
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private int size;
+
+        Transitions() {
+            Arrays.fill(keys, -1);
+        }
+
+        int get(int node, char c) {
+            long key = key(node, c);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+                if (keys[slot] == -1) return -1;
+            }
+        }
+
+        void put(int node, char c, int target) {
+            if (2 * (size + 1) > keys.length) grow();
+            insert(key(node, c), target);
+            size++;
+        }
+
+        private void insert(long key, int target) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != -1) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = target;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(keys, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) insert(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static long key(int node, char c) {
+            return ((long) node << 16) | c;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ragchat.util;
+
+import java.util.Arrays;
+
+/**
+ * Index/value pairs of the non-zero components of a hashed embedding, in ascending
+ * index order. Short chunks and queries touch only a few of the 512 buckets.
+ */
+public class SparseVector {
+
+    private final int[] indices;
+    private final float[] values;
+
+    public SparseVector(int[] indices, float[] values) {
+        this.indices = indices;
+        this.values = values;
+    }
+
+    public static SparseVector fromDense(float[] dense) {
+        int nonZero = 0;
+        for (float v : dense) if (v != 0) nonZero++;
+        int[] indices = new int[nonZero];
+        float[] values = new float[nonZero];
+        int n = 0;
+        for (int i = 0; i < dense.length; i++) {
+            if (dense[i] != 0) {
+                indices[n] = i;
+                values[n++] = dense[i];
+            }
+        }
+        return new SparseVector(indices, values);
+    }
+
+    public static SparseVector fromDense(double[] dense) {
+        float[] values = new float[dense.length];
+        for (int i = 0; i < dense.length; i++) values[i] = (float) dense[i];
+        return fromDense(values);
+    }
+
+    public int size() { return indices.length; }
+    public int[] getIndices() { return indices; }
+    public float[] getValues() { return values; }
+
+    @Override
+    public String toString() {
+        return "SparseVector" + Arrays.toString(indices);
+    }
+}
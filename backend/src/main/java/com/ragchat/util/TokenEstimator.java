@@ -0,0 +1,22 @@
+package com.ragchat.util;
+
+/**
+ * Cheap prompt-token estimate, good enough for budgeting without a tokenizer:
+ * BPE vocabularies average about four characters per token for ASCII text and
+ * about two for other scripts (Cyrillic, accented text).
+ */
+public class TokenEstimator {
+
+    private TokenEstimator() {}
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            if (text.charAt(i) < 128) ascii++;
+            else other++;
+        }
+        return (ascii + 3) / 4 + (other + 1) / 2;
+    }
+}
@@ -0,0 +1,97 @@
+package com.ragchat.util;
+
+/**
+ * Bounded min-heap over (row, score) pairs for top-k selection in a single pass.
+ * The root is always the weakest of the kept candidates, so each offer is O(log k)
+ * and the full candidate list is never sorted.
+ */
+public class TopK {
+
+    private final int capacity;
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    public TopK(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.rows = new int[this.capacity];
+        this.scores = new float[this.capacity];
+    }
+
+    public void offer(int row, float score) {
+        if (capacity == 0) return;
+        if (size < capacity) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /** Lowest kept score, or negative infinity while the heap is not full yet. */
+    public float threshold() {
+        return size < capacity ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Drains the heap and returns the kept rows ordered by score, highest first.
+     * The matching scores are written into {@code scoresOut} when it is not null.
+     */
+    public int[] drainDescending(float[] scoresOut) {
+        int n = size;
+        int[] orderedRows = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            orderedRows[i] = rows[0];
+            if (scoresOut != null) scoresOut[i] = scores[0];
+            size--;
+            if (size > 0) {
+                rows[0] = rows[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return orderedRows;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[i] >= scores[parent]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) smallest = right;
+            if (scores[i] <= scores[smallest]) break;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int r = rows[a];
+        rows[a] = rows[b];
+        rows[b] = r;
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+}
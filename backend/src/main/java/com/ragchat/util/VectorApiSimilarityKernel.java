@@ -0,0 +1,63 @@
+package com.ragchat.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernel on the JDK Vector API. Only loaded through
+ * {@link SimilarityKernel#create(boolean)}, which falls back to the scalar kernel
+ * when the incubator module is missing.
+ */
+public class VectorApiSimilarityKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // Int8 rows: byte and float species with the same lane count, so one byte load widens
+    // into exactly one float vector. At least 8 lanes, as there is no 32-bit byte shape
+    private static final VectorSpecies<Float> INT8_SPECIES =
+            SPECIES.length() >= 8 ? SPECIES : FloatVector.SPECIES_256;
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INT8_SPECIES.length() * Byte.SIZE));
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] query, byte[] codes, int codesOffset, int length) {
+        FloatVector acc = FloatVector.zero(INT8_SPECIES);
+        int i = 0;
+        int bound = INT8_SPECIES.loopBound(length);
+        for (; i < bound; i += INT8_SPECIES.length()) {
+            FloatVector vq = FloatVector.fromArray(INT8_SPECIES, query, i);
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, codesOffset + i)
+                    .convertShape(VectorOperators.B2F, INT8_SPECIES, 0);
+            acc = vq.fma(vc, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * codes[codesOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "vector-api, " + SPECIES.length() + " lanes";
+    }
+}
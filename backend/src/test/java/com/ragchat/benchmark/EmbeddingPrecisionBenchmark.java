@@ -0,0 +1,61 @@
+package com.ragchat.benchmark;
+
+import com.ragchat.service.ConversationVectorIndex;
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.ScalarSimilarityKernel;
+import com.ragchat.util.VectorApiSimilarityKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact top-20 through the resident index with FLOAT32 versus INT8 rows. The
+ * setup prints each index's estimated footprint next to the timings.
+ * Run with: org.openjdk.jmh.Main EmbeddingPrecision (see pom.xml)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class EmbeddingPrecisionBenchmark {
+
+    @Param({"20000"})
+    int rows;
+
+    @Param({"FLOAT32", "INT8"})
+    String precision;
+
+    @Param({"scalar", "simd"})
+    String kernelType;
+
+    private ConversationVectorIndex index;
+    private double[] query;
+
+    @Setup
+    public void setUp() {
+        index = new ConversationVectorIndex(
+                "simd".equals(kernelType) ? new VectorApiSimilarityKernel() : new ScalarSimilarityKernel(),
+                EmbeddingCodec.Precision.valueOf(precision), false);
+        Random random = new Random(42);
+        int dimension = SimilarityKernelBenchmark.DIMENSION;
+        float[] packed = SimilarityKernelBenchmark.randomRows(random, rows, dimension);
+        for (int row = 0; row < rows; row++) {
+            float[] vector = new float[dimension];
+            System.arraycopy(packed, row * dimension, vector, 0, dimension);
+            index.add("chunk-" + row, "doc", vector);
+        }
+        query = new double[dimension];
+        for (int i = 0; i < dimension; i++) query[i] = random.nextGaussian();
+        System.out.printf("%n%s index: %.1f MB estimated%n", precision, index.estimatedBytes() / 1e6);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Double>> exactTopK() {
+        return index.search(query, SimilarityKernelBenchmark.TOP_K);
+    }
+}
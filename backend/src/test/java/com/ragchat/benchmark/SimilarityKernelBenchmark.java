@@ -0,0 +1,62 @@
+package com.ragchat.benchmark;
+
+import com.ragchat.util.ScalarSimilarityKernel;
+import com.ragchat.util.SimilarityKernel;
+import com.ragchat.util.TopK;
+import com.ragchat.util.VectorApiSimilarityKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact top-20 over a packed matrix of normalized 512-dim rows, scalar versus
+ * Vector API kernel: the scan the resident index runs per query.
+ * Run with: org.openjdk.jmh.Main SimilarityKernel (see pom.xml)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class SimilarityKernelBenchmark {
+
+    static final int DIMENSION = 512;
+    static final int TOP_K = 20;
+
+    @Param({"20000"})
+    int rows;
+
+    @Param({"scalar", "simd"})
+    String kernelType;
+
+    private SimilarityKernel kernel;
+    private float[] matrix;
+    private float[] query;
+    private float[] scores;
+
+    @Setup
+    public void setUp() {
+        kernel = "simd".equals(kernelType) ? new VectorApiSimilarityKernel() : new ScalarSimilarityKernel();
+        Random random = new Random(42);
+        matrix = randomRows(random, rows, DIMENSION);
+        query = randomRows(random, 1, DIMENSION);
+        scores = new float[rows];
+    }
+
+    @Benchmark
+    public int[] exactTopK() {
+        kernel.scoreRows(query, matrix, DIMENSION, 0, rows, scores);
+        TopK top = new TopK(TOP_K);
+        for (int row = 0; row < rows; row++) top.offer(row, scores[row]);
+        return top.drainDescending(null);
+    }
+
+    static float[] randomRows(Random random, int rows, int dimension) {
+        float[] packed = new float[rows * dimension];
+        for (int i = 0; i < packed.length; i++) packed[i] = (float) random.nextGaussian();
+        for (int row = 0; row < rows; row++) SimilarityKernel.normalize(packed, row * dimension, dimension);
+        return packed;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ragchat.benchmark;
+
+import com.ragchat.util.LegacySnippetExtractor;
+import com.ragchat.util.SnippetExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snippets for the 20 sources of one answer, as buildSources makes them, for
+ * growing answer lengths: SnippetExtractor (automaton built once per answer)
+ * versus the regex implementation it replaced. Divide by 20 for the cost per chunk.
+ * Run with: org.openjdk.jmh.Main SnippetExtractor (see pom.xml)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnippetExtractorBenchmark {
+
+    private static final int SOURCES = 20;
+    private static final int CHUNK_WORDS = 500;
+
+    @Param({"50", "500", "5000"})
+    int answerWords;
+
+    @Param({"legacy", "automaton"})
+    String implementation;
+
+    private String query;
+    private String[] chunks;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] vocabulary = new String[3000];
+        for (int i = 0; i < vocabulary.length; i++) vocabulary[i] = randomWord(random);
+        query = text(random, vocabulary, 12) + " " + text(random, vocabulary, answerWords);
+        chunks = new String[SOURCES];
+        for (int i = 0; i < SOURCES; i++) chunks[i] = text(random, vocabulary, CHUNK_WORDS);
+    }
+
+    @Benchmark
+    public void snippetsForOneAnswer(Blackhole blackhole) {
+        if ("legacy".equals(implementation)) {
+            for (String chunk : chunks) blackhole.consume(LegacySnippetExtractor.generateSmartSnippet(chunk, query));
+        } else {
+            SnippetExtractor extractor = new SnippetExtractor(query);
+            for (String chunk : chunks) blackhole.consume(extractor.extract(chunk));
+        }
+    }
+
+    private static String text(Random random, String[] vocabulary, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(' ');
+            // Skewed towards common words, like natural text
+            text.append(vocabulary[(int) (vocabulary.length * Math.pow(random.nextDouble(), 3))]);
+        }
+        return text.toString();
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 2 + random.nextInt(8); i > 0; i--) {
+            word.append(random.nextInt(12) == 0 ? (char) ('0' + random.nextInt(10)) : (char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ragchat.benchmark;
+
+import com.ragchat.service.ConversationVectorIndex;
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.ScalarSimilarityKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact top-20 over hashed embeddings of short chunks (a few dozen non-zero
+ * buckets each) with a short query: posting lists versus the dense scalar scan.
+ * The setup prints each index's estimated footprint next to the timings.
+ * Run with: org.openjdk.jmh.Main SparseIndex (see pom.xml)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SparseIndexBenchmark {
+
+    @Param({"20000"})
+    int rows;
+
+    @Param({"40"})
+    int chunkTerms;
+
+    @Param({"8"})
+    int queryTerms;
+
+    @Param({"dense", "sparse"})
+    String indexType;
+
+    private ConversationVectorIndex index;
+    private double[] query;
+
+    @Setup
+    public void setUp() {
+        index = new ConversationVectorIndex(new ScalarSimilarityKernel(), EmbeddingCodec.Precision.FLOAT32,
+                "sparse".equals(indexType));
+        Random random = new Random(42);
+        int dimension = SimilarityKernelBenchmark.DIMENSION;
+        for (int row = 0; row < rows; row++) {
+            float[] vector = new float[dimension];
+            for (int term = 0; term < chunkTerms; term++) vector[random.nextInt(dimension)] += 1f;
+            index.add("chunk-" + row, "doc", vector);
+        }
+        query = new double[dimension];
+        for (int term = 0; term < queryTerms; term++) query[random.nextInt(dimension)] += 1;
+        System.out.printf("%n%s index: %.1f MB estimated%n", indexType, index.estimatedBytes() / 1e6);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Double>> exactTopK() {
+        return index.search(query, SimilarityKernelBenchmark.TOP_K);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ragchat.service;
+
+import com.ragchat.model.Conversation;
+import com.ragchat.model.DocumentInfo;
+import com.ragchat.repository.DocumentInfoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnswerCacheTest {
+
+    private final DocumentInfoRepository documents = mock(DocumentInfoRepository.class);
+    private AnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AnswerCache(documents, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.95);
+        // Two conversations, of different users, over the same file
+        when(documents.findByConversationId("a")).thenReturn(List.of(ready("doc-a", "hash-1")));
+        when(documents.findByConversationId("b")).thenReturn(List.of(ready("doc-b", "hash-1")));
+    }
+
+    @Test
+    void standaloneQuestionsAreSharedAcrossConversationsAndHistories() {
+        String question = "What is the warranty period for the X200 pump?";
+        String scopeA = cache.scope("a", question, history("How do I install it?", "Bolt it down.", question));
+        String scopeB = cache.scope("b", question, history(question));
+        assertEquals(scopeA, scopeB);
+
+        cache.put(scopeA, question, null, "Two years.", 1_000_000);
+        assertEquals("Two years.", cache.lookup(scopeB, "  what is the warranty period for the x200 pump ", null));
+    }
+
+    @Test
+    void followUpsAreScopedByTheHistory() {
+        String followUp = "And how long does it last?";
+        String afterPump = cache.scope("a", followUp, history("Tell me about the X200 pump", "It is...", followUp));
+        String afterValve = cache.scope("a", followUp, history("Tell me about the V10 valve", "It is...", followUp));
+        assertNotEquals(afterPump, afterValve);
+        assertEquals(afterPump, cache.scope("b", followUp, history("Tell me about the X200 pump", "It is...", followUp)));
+    }
+
+    @Test
+    void detectsFollowUps() {
+        assertTrue(AnswerCache.isFollowUp("Why?"));
+        assertTrue(AnswerCache.isFollowUp("What about the second one"));
+        assertTrue(AnswerCache.isFollowUp("Can you explain that in more detail?"));
+        assertTrue(AnswerCache.isFollowUp("Расскажи про это подробнее"));
+        assertFalse(AnswerCache.isFollowUp("What is the warranty period for the X200 pump?"));
+        assertFalse(AnswerCache.isFollowUp("Какой гарантийный срок у насоса X200?"));
+    }
+
+    private static DocumentInfo ready(String id, String contentHash) {
+        DocumentInfo document = new DocumentInfo();
+        document.setId(id);
+        document.setStatus("READY");
+        document.setContentHash(contentHash);
+        return document;
+    }
+
+    // Alternating user/assistant turns; the last one is the current question
+    private static List<Conversation.Message> history(String... contents) {
+        Conversation.Message[] messages = new Conversation.Message[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            messages[i] = new Conversation.Message(i % 2 == 0 ? "user" : "assistant", contents[i], null, null);
+        }
+        return List.of(messages);
+    }
+}
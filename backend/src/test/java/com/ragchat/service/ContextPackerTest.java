@@ -0,0 +1,77 @@
+package com.ragchat.service;
+
+import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
+import com.ragchat.util.TokenEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPackerTest {
+
+    private static final String SEPARATOR = "\n\n---\n\n";
+
+    private final ContextPacker packer = new ContextPacker();
+
+    @Test
+    void skipsAChunkThatDoesNotFitAndKeepsFillingTheBudget() {
+        ScoredChunk first = scored("a.pdf", "The pump is rated for ten bar.");
+        ScoredChunk tooBig = scored("b.pdf", "Long section. ".repeat(50).trim());
+        ScoredChunk small = scored("c.pdf", "Check the seals yearly.");
+        int budget = tokens(first, true) + tokens(small, false);
+
+        ContextPacker.Packed packed = packer.pack(List.of(first, tooBig, small), budget);
+
+        assertEquals(List.of(first, small), packed.getChunks());
+        assertEquals("[Document: a.pdf]\nThe pump is rated for ten bar." + SEPARATOR
+                + "[Document: c.pdf]\nCheck the seals yearly.", packed.getContext());
+        assertEquals(budget, packed.getTokens());
+    }
+
+    @Test
+    void leavesOutTextAlreadyInTheContext() {
+        ScoredChunk section = scored("a.pdf", "Torque the bolts to 40 Nm, then check the seals.");
+        ScoredChunk contained = scored("a.pdf", "check the seals");
+        ScoredChunk sameFileTwice = scored("copy-of-a.pdf", "Torque the bolts to 40 Nm, then check the seals.");
+        ScoredChunk containing = scored("b.pdf", "Before use: Torque the bolts to 40 Nm, then check the seals. Done.");
+
+        ContextPacker.Packed packed = packer.pack(List.of(section, contained, sameFileTwice, containing), 10_000);
+
+        // Only shorter text inside a packed chunk is dropped, not a longer chunk around it
+        assertEquals(List.of(section, containing), packed.getChunks());
+    }
+
+    @Test
+    void truncatesAFirstChunkThatAloneExceedsTheBudget() {
+        ScoredChunk huge = scored("a.pdf", "alpha beta gamma delta ".repeat(100).trim());
+        ScoredChunk next = scored("b.pdf", "short");
+
+        ContextPacker.Packed packed = packer.pack(List.of(huge, next), 20);
+
+        assertEquals(List.of(huge), packed.getChunks());
+        assertEquals(20, packed.getTokens());
+        String header = "[Document: a.pdf]\n";
+        assertTrue(packed.getContext().startsWith(header));
+        String cut = packed.getContext().substring(header.length());
+        assertTrue(huge.getChunk().getContent().startsWith(cut + " "), "cut at a word boundary: " + cut);
+        assertTrue(TokenEstimator.estimate(header) + TokenEstimator.estimate(cut) <= 20);
+
+        assertEquals("", packer.pack(List.of(huge), 0).getContext());
+    }
+
+    private static int tokens(ScoredChunk scored, boolean first) {
+        DocumentChunk chunk = scored.getChunk();
+        return TokenEstimator.estimate("[Document: " + chunk.getDocumentName() + "]\n")
+                + TokenEstimator.estimate(chunk.getContent())
+                + (first ? 0 : TokenEstimator.estimate(SEPARATOR));
+    }
+
+    private static ScoredChunk scored(String documentName, String content) {
+        DocumentChunk chunk = new DocumentChunk();
+        chunk.setDocumentName(documentName);
+        chunk.setContent(content);
+        return new ScoredChunk(chunk, 0.5);
+    }
+}
@@ -0,0 +1,87 @@
+package com.ragchat.service;
+
+import com.ragchat.util.EmbeddingCodec;
+import com.ragchat.util.ScalarSimilarityKernel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationVectorIndexTest {
+
+    private static final int DIMENSION = 512;
+    private static final int ROWS = 5000;
+    private static final int TOP_K = 20;
+    private static final int GRAPH_ROWS = 2000;
+
+    private final Random random = new Random(11);
+
+    @Test
+    void int8KeepsTheTopResultsInAThirdOfTheMemory() {
+        ConversationVectorIndex float32 = new ConversationVectorIndex(new ScalarSimilarityKernel(), EmbeddingCodec.Precision.FLOAT32, false);
+        ConversationVectorIndex int8 = new ConversationVectorIndex(new ScalarSimilarityKernel(), EmbeddingCodec.Precision.INT8, false);
+        float[][] rows = new float[ROWS][];
+        for (int row = 0; row < ROWS; row++) {
+            rows[row] = randomVector(DIMENSION);
+            float32.add("chunk-" + row, "doc", rows[row]);
+            int8.add("chunk-" + row, "doc", rows[row]);
+        }
+        assertTrue(int8.estimatedBytes() * 3 < float32.estimatedBytes(),
+                int8.estimatedBytes() + " vs " + float32.estimatedBytes() + " bytes");
+
+        int overlap = 0;
+        for (int q = 0; q < 50; q++) {
+            // A question close to one chunk, like a real query to its source passage
+            double[] query = nearby(rows[random.nextInt(ROWS)], 0.5);
+            List<Map.Entry<String, Double>> exact = float32.search(query, TOP_K);
+            List<Map.Entry<String, Double>> quantized = int8.search(query, TOP_K);
+            assertEquals(exact.get(0).getKey(), quantized.get(0).getKey(), "query " + q);
+            overlap += (int) Math.round(ConversationVectorIndex.recall(exact, quantized) * TOP_K);
+        }
+        assertTrue(overlap >= 50 * TOP_K * 0.9, "top-" + TOP_K + " overlap " + overlap + " of " + 50 * TOP_K);
+    }
+
+    @Test
+    void graphBuiltWhileRowsArriveCoversEveryRow() throws Exception {
+        ConversationVectorIndex index = new ConversationVectorIndex(new ScalarSimilarityKernel(), EmbeddingCodec.Precision.INT8, false);
+        float[][] rows = new float[GRAPH_ROWS][];
+        for (int row = 0; row < GRAPH_ROWS; row++) rows[row] = randomVector(DIMENSION);
+        for (int row = 0; row < GRAPH_ROWS / 2; row++) index.add("chunk-" + row, "doc", rows[row]);
+
+        // The build works on a copy, so adds and searches go ahead while it runs
+        Thread adder = new Thread(() -> {
+            for (int row = GRAPH_ROWS / 2; row < GRAPH_ROWS; row++) {
+                index.add("chunk-" + row, "doc", rows[row]);
+                if (row % 10 == 0) index.search(nearby(rows[row], 0.5), TOP_K);
+            }
+        });
+        adder.start();
+        assertTrue(index.buildGraph(16, 100));
+        adder.join();
+
+        assertTrue(index.hasGraph());
+        for (int q = 0; q < 50; q++) {
+            int row = random.nextInt(GRAPH_ROWS);
+            List<Map.Entry<String, Double>> approximate = index.searchApproximate(nearby(rows[row], 0.1), TOP_K, 100);
+            assertEquals("chunk-" + row, approximate.get(0).getKey(), "query " + q);
+        }
+    }
+
+    private float[] randomVector(int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) vector[i] = (float) random.nextGaussian();
+        return vector;
+    }
+
+    private double[] nearby(float[] row, double noise) {
+        double[] query = new double[row.length];
+        double norm = 0;
+        for (float v : row) norm += v * v;
+        for (int i = 0; i < row.length; i++) query[i] = row[i] / Math.sqrt(norm) + random.nextGaussian() * noise / Math.sqrt(row.length);
+        return query;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ragchat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * The single-pass tokenizer must give bit-identical vectors to the regex
+ * implementation it replaced, whatever the script or the default locale.
+ */
+class EmbeddingServiceTest {
+
+    // Latin, Cyrillic (with ё and letters outside а-я), digits, punctuation, whitespace
+    // variants, combining marks, a surrogate pair, and letters whose case mapping
+    // depends on the locale or changes the length (İ, ß)
+    private static final String[] PIECES = {
+            "a", "b", "z", "Q", "x", "ab", "the", "Revenue", "data", "ё", "Ё", "ж", "Я", "і", "ї",
+            "договор", "Цена", "0", "7", "2023", "v2", "-", ".", ",", "!", "'", "_", "(", ")", "€",
+            " ", "  ", "\t", "\n", "\r\n", "\u000B", "\f", " ", " ", "é", "̈",
+            "😀", "İ", "I", "ı", "ß", "ǅ", "Σ"
+    };
+
+    private final EmbeddingService service = new EmbeddingService(1, 10, new SimpleMeterRegistry());
+    private final Random random = new Random(7);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void matchesTheRegexTokenizerOnRandomizedInputs() {
+        assertEquivalentOn(20_000);
+    }
+
+    @Test
+    void matchesTheRegexTokenizerUnderTheTurkishLocale() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertEquivalentOn(5_000);
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    void blankTextIsTheZeroVector() {
+        for (String text : new String[]{null, "", " \n\t"}) {
+            assertArrayEquals(LegacyEmbedding.embed(text), service.embed(text));
+        }
+        assertArrayEquals(LegacyEmbedding.embed("- . !"), service.embed("- . !"));
+    }
+
+    private void assertEquivalentOn(int inputs) {
+        for (int input = 0; input < inputs; input++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(60); i > 0; i--) text.append(PIECES[random.nextInt(PIECES.length)]);
+            String value = text.toString();
+            assertArrayEquals(LegacyEmbedding.embed(value), service.embed(value), "input: " + value);
+        }
+    }
+}
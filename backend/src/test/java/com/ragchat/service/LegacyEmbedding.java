@@ -0,0 +1,65 @@
+package com.ragchat.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * EmbeddingService.embed as it was before the single-pass tokenizer replaced it
+ * (regex clean-up, split, per-word frequency map, trigram substrings), kept
+ * unchanged as the reference for the equivalence test.
+ */
+final class LegacyEmbedding {
+
+    private static final int VECTOR_SIZE = 512;
+
+    private LegacyEmbedding() {}
+
+    static double[] embed(String text) {
+        if (text == null || text.isBlank()) {
+            return new double[VECTOR_SIZE];
+        }
+
+        // Tokenize and normalize
+        String[] words = text.toLowerCase()
+                .replaceAll("[^a-zа-яёA-ZА-ЯЁ0-9\\s]", " ")
+                .split("\\s+");
+
+        // Create a hash-based feature vector (feature hashing / hashing trick)
+        double[] vector = new double[VECTOR_SIZE];
+        Map<String, Integer> wordFreq = new HashMap<>();
+
+        for (String word : words) {
+            if (word.length() > 1) {
+                wordFreq.merge(word, 1, Integer::sum);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : wordFreq.entrySet()) {
+            int hash = Math.abs(entry.getKey().hashCode());
+            int index = hash % VECTOR_SIZE;
+            vector[index] += entry.getValue();
+
+            // Also add bigram-like features using character n-grams
+            String word = entry.getKey();
+            if (word.length() >= 3) {
+                for (int i = 0; i <= word.length() - 3; i++) {
+                    int ngramHash = Math.abs(word.substring(i, i + 3).hashCode());
+                    int ngramIndex = ngramHash % VECTOR_SIZE;
+                    vector[ngramIndex] += 0.5 * entry.getValue();
+                }
+            }
+        }
+
+        // L2 normalize
+        double norm = 0;
+        for (double v : vector) norm += v * v;
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+
+        return vector;
+    }
+}
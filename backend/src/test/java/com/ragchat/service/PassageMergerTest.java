@@ -0,0 +1,96 @@
+package com.ragchat.service;
+
+import com.ragchat.model.DocumentChunk;
+import com.ragchat.model.ScoredChunk;
+import com.ragchat.util.SectionChunker;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Windows cut by SectionChunker (6 words, overlapping by 2) merged back into
+ * passages.
+ */
+class PassageMergerTest {
+
+    private static final int CHUNK_SIZE = 6;
+    private static final int CHUNK_OVERLAP = 2;
+
+    private final PassageMerger merger = new PassageMerger();
+
+    PassageMergerTest() {
+        ReflectionTestUtils.setField(merger, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(merger, "chunkOverlap", CHUNK_OVERLAP);
+    }
+
+    @Test
+    void adjacentWindowsBecomeOnePassageWithTheOverlapOnce() {
+        String section = "w1 w2 w3 w4 w5 w6 w7 w8 w9 w10 w11 w12 w13 w14.";
+        List<DocumentChunk> windows = chunk("INSTALLATION\n" + section);
+        assertEquals(3, windows.size());
+
+        List<ScoredChunk> merged = merger.merge(List.of(
+                scored(windows.get(1), 0.9), scored(windows.get(0), 0.5), scored(windows.get(2), 0.7)));
+
+        assertEquals(1, merged.size());
+        DocumentChunk passage = merged.get(0).getChunk();
+        assertEquals(section, passage.getContent());
+        assertEquals(0.9, merged.get(0).getScore());
+        assertEquals(windows.get(1).getId(), passage.getId()); // Representative: the best member
+        assertEquals(0, passage.getChunkIndex());
+        assertEquals("INSTALLATION", passage.getSection());
+    }
+
+    @Test
+    void gapInIndexesKeepsSeparatePassagesInRankingOrder() {
+        List<DocumentChunk> windows = chunk("INSTALLATION\nw1 w2 w3 w4 w5 w6 w7 w8 w9 w10 w11 w12 w13 w14.");
+
+        List<ScoredChunk> merged = merger.merge(List.of(scored(windows.get(2), 0.6), scored(windows.get(0), 0.8)));
+
+        assertEquals(2, merged.size());
+        assertEquals(windows.get(2).getContent(), merged.get(0).getChunk().getContent());
+        assertEquals(windows.get(0).getContent(), merged.get(1).getChunk().getContent());
+    }
+
+    @Test
+    void sectionsSharingAHeaderAreNotMerged() {
+        // The second INSTALLATION section starts a new window run right after the first one's
+        List<DocumentChunk> windows = chunk("INSTALLATION\na1 a2 a3 a4 a5 a6 a7 a8.\n"
+                + "MAINTENANCE\nb1 b2 b3.\nINSTALLATION\nc1 c2 c3 c4.");
+        DocumentChunk lastOfFirst = windows.get(1);
+        DocumentChunk second = windows.get(3);
+        assertEquals("INSTALLATION", second.getSection());
+        second.setChunkIndex(lastOfFirst.getChunkIndex() + 1); // Adjacent indexes, as if MAINTENANCE were absent
+
+        List<ScoredChunk> merged = merger.merge(List.of(scored(lastOfFirst, 0.9), scored(second, 0.8)));
+
+        assertEquals(2, merged.size());
+        assertEquals(lastOfFirst.getContent(), merged.get(0).getChunk().getContent());
+        assertEquals(second.getContent(), merged.get(1).getChunk().getContent());
+    }
+
+    private static List<DocumentChunk> chunk(String text) {
+        List<DocumentChunk> chunks = new ArrayList<>();
+        SectionChunker chunker = new SectionChunker(CHUNK_SIZE, CHUNK_OVERLAP, (section, content) -> {
+            DocumentChunk chunk = new DocumentChunk();
+            chunk.setId("chunk-" + chunks.size());
+            chunk.setDocumentId("doc");
+            chunk.setDocumentName("manual.pdf");
+            chunk.setSection(section);
+            chunk.setContent(content);
+            chunk.setChunkIndex(chunks.size());
+            chunks.add(chunk);
+        });
+        chunker.write(text.toCharArray(), 0, text.length());
+        chunker.close();
+        return chunks;
+    }
+
+    private static ScoredChunk scored(DocumentChunk chunk, double score) {
+        return new ScoredChunk(chunk, score);
+    }
+}
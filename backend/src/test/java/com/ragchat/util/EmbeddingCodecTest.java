@@ -0,0 +1,71 @@
+package com.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingCodecTest {
+
+    private static final int DIMENSION = 512;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void float32RoundTripsExactlyIn2Kb() {
+        double[] embedding = randomEmbedding();
+        byte[] encoded = EmbeddingCodec.encode(embedding, EmbeddingCodec.Precision.FLOAT32);
+        assertEquals(5 + DIMENSION * Float.BYTES, encoded.length);
+
+        float[] decoded = EmbeddingCodec.decode(encoded);
+        for (int i = 0; i < DIMENSION; i++) assertEquals((float) embedding[i], decoded[i], 0f);
+    }
+
+    @Test
+    void int8StaysWithinHalfAStepInAQuarterOfTheSpace() {
+        double[] embedding = randomEmbedding();
+        byte[] encoded = EmbeddingCodec.encode(embedding, EmbeddingCodec.Precision.INT8);
+        assertEquals(5 + Float.BYTES + DIMENSION, encoded.length);
+
+        double maxAbs = 0;
+        for (double v : embedding) maxAbs = Math.max(maxAbs, Math.abs(v));
+        float halfStep = (float) (maxAbs / 127 / 2);
+        float[] decoded = EmbeddingCodec.decode(encoded);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals((float) embedding[i], decoded[i], halfStep * 1.001f, "component " + i);
+        }
+    }
+
+    @Test
+    void mostlyZeroVectorsUseTheSparseFormat() {
+        double[] embedding = new double[DIMENSION];
+        for (int i = 0; i < 5; i++) embedding[random.nextInt(DIMENSION)] = random.nextGaussian();
+        byte[] encoded = EmbeddingCodec.encode(embedding, EmbeddingCodec.Precision.FLOAT32);
+        assertTrue(encoded.length < 64, "sparse encoding is " + encoded.length + " bytes");
+
+        float[] expected = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) expected[i] = (float) embedding[i];
+        assertArrayEquals(expected, EmbeddingCodec.decode(encoded));
+    }
+
+    @Test
+    void nullStaysNull() {
+        assertNull(EmbeddingCodec.encode(null, EmbeddingCodec.Precision.INT8));
+        assertNull(EmbeddingCodec.decode(null));
+    }
+
+    private double[] randomEmbedding() {
+        double[] embedding = new double[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            embedding[i] = random.nextGaussian();
+            norm += embedding[i] * embedding[i];
+        }
+        for (int i = 0; i < DIMENSION; i++) embedding[i] /= Math.sqrt(norm);
+        return embedding;
+    }
+}
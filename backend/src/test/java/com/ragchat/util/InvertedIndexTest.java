@@ -0,0 +1,122 @@
+package com.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * InvertedIndex.search must return what a full scan of every row returns,
+ * including when the query shares no bucket with any row.
+ */
+class InvertedIndexTest {
+
+    private static final int BUCKETS = 512;
+
+    private final Random random = new Random(3);
+
+    @Test
+    void matchesAFullScan() {
+        for (int trial = 0; trial < 200; trial++) {
+            int rows = 1 + random.nextInt(2000);
+            SparseVector[] vectors = new SparseVector[rows];
+            InvertedIndex index = new InvertedIndex(BUCKETS);
+            for (int row = 0; row < rows; row++) {
+                vectors[row] = randomSparse(1 + random.nextInt(40));
+                index.add(row, vectors[row]);
+            }
+            SparseVector query = randomSparse(1 + random.nextInt(8));
+            int k = 1 + random.nextInt(30);
+            assertSameTopK(vectors, rows, index, query, k, "trial " + trial);
+        }
+    }
+
+    @Test
+    void queryMatchingNothingStillReturnsK() {
+        InvertedIndex index = new InvertedIndex(BUCKETS);
+        SparseVector[] vectors = new SparseVector[50];
+        for (int row = 0; row < 50; row++) {
+            vectors[row] = new SparseVector(new int[]{row % 10}, new float[]{1f});
+            index.add(row, vectors[row]);
+        }
+        SparseVector query = new SparseVector(new int[]{100, 200}, new float[]{0.6f, 0.8f});
+        TopK top = new TopK(20);
+        index.search(query, 50, top);
+        assertEquals(20, top.size());
+        assertSameTopK(vectors, 50, index, query, 20, "no match");
+    }
+
+    @Test
+    void remapKeepsTheRemainingRows() {
+        int rows = 500;
+        SparseVector[] vectors = new SparseVector[rows];
+        InvertedIndex index = new InvertedIndex(BUCKETS);
+        for (int row = 0; row < rows; row++) {
+            vectors[row] = randomSparse(1 + random.nextInt(40));
+            index.add(row, vectors[row]);
+        }
+        // Drop every third row, as removing a document compacts the index
+        int[] newRow = new int[rows];
+        SparseVector[] kept = new SparseVector[rows];
+        int write = 0;
+        for (int row = 0; row < rows; row++) {
+            if (row % 3 == 0) {
+                newRow[row] = -1;
+            } else {
+                kept[write] = vectors[row];
+                newRow[row] = write++;
+            }
+        }
+        index.remap(newRow);
+        for (int trial = 0; trial < 20; trial++) {
+            assertSameTopK(kept, write, index, randomSparse(8), 20, "after remap " + trial);
+        }
+    }
+
+    private static void assertSameTopK(SparseVector[] vectors, int rows, InvertedIndex index,
+                                       SparseVector query, int k, String message) {
+        TopK expectedTop = new TopK(Math.min(k, rows));
+        for (int row = 0; row < rows; row++) expectedTop.offer(row, dot(query, vectors[row]));
+        float[] expectedScores = new float[expectedTop.size()];
+        int[] expectedRows = expectedTop.drainDescending(expectedScores);
+
+        TopK actualTop = new TopK(Math.min(k, rows));
+        index.search(query, rows, actualTop);
+        float[] actualScores = new float[actualTop.size()];
+        int[] actualRows = actualTop.drainDescending(actualScores);
+
+        // Rows tied with the last kept score may legitimately differ; everything above it may not
+        assertArrayEquals(expectedScores, actualScores);
+        float cut = expectedScores.length == 0 ? 0 : expectedScores[expectedScores.length - 1];
+        assertArrayEquals(above(expectedRows, expectedScores, cut), above(actualRows, actualScores, cut), message);
+    }
+
+    private static int[] above(int[] rows, float[] scores, float cut) {
+        int n = 0;
+        while (n < rows.length && scores[n] > cut) n++;
+        int[] result = Arrays.copyOf(rows, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Same summation order as the index: the query's buckets, ascending
+    private static float dot(SparseVector query, SparseVector row) {
+        float sum = 0;
+        int j = 0;
+        for (int i = 0; i < query.size(); i++) {
+            int bucket = query.getIndices()[i];
+            while (j < row.size() && row.getIndices()[j] < bucket) j++;
+            if (j < row.size() && row.getIndices()[j] == bucket) sum += query.getValues()[i] * row.getValues()[j];
+        }
+        return sum;
+    }
+
+    private SparseVector randomSparse(int nonZero) {
+        float[] dense = new float[BUCKETS];
+        for (int i = 0; i < nonZero; i++) dense[random.nextInt(BUCKETS)] = (float) random.nextGaussian();
+        return SparseVector.fromDense(dense);
+    }
+}
@@ -0,0 +1,86 @@
+package com.ragchat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DocumentParser.splitIntoSectionedChunks as it was before SectionChunker replaced
+ * it (the whole extracted text split at once), kept unchanged as the reference for
+ * the equivalence test.
+ */
+public final class LegacySectionSplitter {
+
+    private final int chunkSize;
+    private final int chunkOverlap;
+
+    public LegacySectionSplitter(int chunkSize, int chunkOverlap) {
+        this.chunkSize = chunkSize;
+        this.chunkOverlap = chunkOverlap;
+    }
+
+    public List<Map.Entry<String, String>> splitIntoSectionedChunks(String text) {
+        List<Map.Entry<String, String>> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+
+        // 1. Split into lines to find headers
+        String[] lines = text.split("\\r?\\n");
+        String currentSection = "Introduction"; // Default section
+        StringBuilder currentBuffer = new StringBuilder();
+
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+
+            // Simple heuristic for headers:
+            // - Short (under 60 chars)
+            // - Starts with number, or is all UPPERCASE, or doesn't end with punctuation
+            boolean isHeader = trimmed.length() < 60 && 
+                               (trimmed.matches("^\\d+\\..*") || 
+                                trimmed.matches("^[A-ZА-Я0-9\\s\\-]+$") || 
+                                !trimmed.matches(".*[.!?]$"));
+
+            if (isHeader) {
+                // If we have content in the buffer, save it with the OLD section
+                if (currentBuffer.length() > 0) {
+                    processBufferToChunks(currentBuffer.toString(), currentSection, chunks);
+                    currentBuffer.setLength(0);
+                }
+                // Update current section to new header
+                currentSection = trimmed;
+            } else {
+                if (currentBuffer.length() > 0) currentBuffer.append(" ");
+                currentBuffer.append(trimmed);
+            }
+        }
+
+        // Process remaining buffer
+        if (currentBuffer.length() > 0) {
+            processBufferToChunks(currentBuffer.toString(), currentSection, chunks);
+        }
+
+        return chunks;
+    }
+
+    private void processBufferToChunks(String text, String section, List<Map.Entry<String, String>> chunks) {
+        String[] words = text.split("\\s+");
+        if (words.length <= chunkSize) {
+            chunks.add(Map.entry(section, text));
+            return;
+        }
+
+        int step = chunkSize - chunkOverlap;
+        for (int i = 0; i < words.length; i += step) {
+            int end = Math.min(i + chunkSize, words.length);
+            StringBuilder chunk = new StringBuilder();
+            for (int j = i; j < end; j++) {
+                if (j > i) chunk.append(" ");
+                chunk.append(words[j]);
+            }
+            chunks.add(Map.entry(section, chunk.toString()));
+            if (end == words.length) break;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ragchat.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ChatService.generateSmartSnippet as it was before SnippetExtractor replaced it
+ * (one regex per keyword per chunk, O(m^2) window search), kept unchanged as the
+ * reference for the equivalence test and the benchmark.
+ */
+public final class LegacySnippetExtractor {
+
+    private LegacySnippetExtractor() {}
+
+    public static String generateSmartSnippet(String content, String query) {
+        if (content == null || content.isEmpty()) return "";
+
+        String contentLower = content.toLowerCase();
+        // Extract keywords: words > 3 chars OR digits
+        List<String> keywords = Arrays.stream(query.toLowerCase().split("\\s+"))
+                .filter(w -> w.length() > 3 || w.matches(".*\\d.*"))
+                .distinct()
+                .toList();
+
+        if (keywords.isEmpty()) {
+            return content.length() > 150 ? content.substring(0, 150) + "..." : content;
+        }
+
+        // 1. Find all match positions for every keyword
+        List<Integer> matchIndices = new ArrayList<>();
+        for (String keyword : keywords) {
+            java.util.regex.Pattern p;
+            if (keyword.matches(".*\\d.*")) {
+                 // Strict number matching
+                 p = java.util.regex.Pattern.compile("(?<!\\d)" + java.util.regex.Pattern.quote(keyword) + "(?!\\d)");
+            } else {
+                 // Word matching
+                 p = java.util.regex.Pattern.compile(java.util.regex.Pattern.quote(keyword));
+            }
+            java.util.regex.Matcher m = p.matcher(contentLower);
+            while (m.find()) {
+                matchIndices.add(m.start());
+            }
+        }
+
+        Collections.sort(matchIndices);
+
+        if (matchIndices.isEmpty()) {
+             return content.length() > 150 ? content.substring(0, 150) + "..." : content;
+        }
+
+        // 2. Sliding window to find highest density of keywords
+        int windowSize = 200;
+        int bestStart = matchIndices.get(0);
+        int maxDensity = 0;
+
+        // Check windows starting at each match
+        for (int i = 0; i < matchIndices.size(); i++) {
+            int currentStart = matchIndices.get(i);
+            int currentEnd = currentStart + windowSize;
+            int density = 0;
+
+            // Count matches in this window
+            for (int j = i; j < matchIndices.size(); j++) {
+                int pos = matchIndices.get(j);
+                if (pos >= currentStart && pos < currentEnd) {
+                    density++;
+                } else if (pos >= currentEnd) {
+                    break;
+                }
+            }
+
+            if (density > maxDensity) {
+                maxDensity = density;
+                bestStart = currentStart;
+            }
+        }
+
+        // 3. Extract best window
+        int start = Math.max(0, bestStart - 40); // Add some context before
+        int end = Math.min(content.length(), start + windowSize);
+
+        // Adjust start if we hit end boundary
+        if (end == content.length()) {
+            start = Math.max(0, end - windowSize);
+        }
+
+        String snippet = content.substring(start, end);
+
+        // Trim edges cleanly
+        if (start > 0) snippet = "..." + snippet.substring(snippet.indexOf(' ') + 1);
+        if (end < content.length()) snippet = snippet.substring(0, snippet.lastIndexOf(' ')) + "...";
+
+        return snippet;
+    }
+}
@@ -0,0 +1,71 @@
+package com.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SectionChunker, fed in arbitrary pieces as Tika writes, must produce exactly the
+ * chunks of splitting the whole text at once with the splitter it replaced.
+ */
+class SectionChunkerTest {
+
+    private static final String[] WORDS = {
+            "the", "pump", "Pressure", "must", "be", "checked", "daily.", "Warning!", "why?", "2023",
+            "1.", "2.3", "INSTALLATION", "ОБСЛУЖИВАНИЕ", "насос", "Договор", "-", "x", "v2.1", "end."
+    };
+    // Line ends, \s whitespace, and whitespace that trim() drops but split("\\s+") keeps
+    private static final String[] SEPARATORS = {
+            " ", " ", " ", "  ", "\t", "\n", "\n", "\r\n", "\n\n", " \n ", "\u000B", "\f", "\r", "\u0001", " "
+    };
+
+    private final Random random = new Random(10);
+
+    @Test
+    void matchesTheWholeTextSplitterOnRandomizedInputs() {
+        for (int input = 0; input < 5_000; input++) {
+            int chunkSize = 1 + random.nextInt(12);
+            int chunkOverlap = random.nextInt(chunkSize);
+            String text = randomText();
+            assertEquals(new LegacySectionSplitter(chunkSize, chunkOverlap).splitIntoSectionedChunks(text),
+                    chunk(text, chunkSize, chunkOverlap),
+                    "size " + chunkSize + ", overlap " + chunkOverlap + ", text: " + text);
+        }
+    }
+
+    @Test
+    void longLinesAreStreamedLikeShortOnes() {
+        // Over the 60 characters a header can have, so the line is streamed before it ends
+        String line = "word ".repeat(40).trim() + ".";
+        String text = "HEADER\n  " + line + "  \n" + line + "\nNEXT\n" + line;
+        assertEquals(new LegacySectionSplitter(7, 3).splitIntoSectionedChunks(text), chunk(text, 7, 3));
+    }
+
+    private List<Map.Entry<String, String>> chunk(String text, int chunkSize, int chunkOverlap) {
+        List<Map.Entry<String, String>> chunks = new ArrayList<>();
+        SectionChunker chunker = new SectionChunker(chunkSize, chunkOverlap,
+                (section, content) -> chunks.add(Map.entry(section, content)));
+        char[] chars = text.toCharArray();
+        for (int offset = 0; offset < chars.length; ) {
+            int length = Math.min(chars.length - offset, 1 + random.nextInt(40));
+            chunker.write(chars, offset, length);
+            offset += length;
+        }
+        chunker.close();
+        return chunks;
+    }
+
+    private String randomText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(150); i > 0; i--) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(random.nextInt(4) == 0 ? SEPARATORS[random.nextInt(SEPARATORS.length)] : " ");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The Vector API kernel must score like the scalar one, up to float rounding
+ * (the lanes sum in a different order).
+ */
+class SimilarityKernelTest {
+
+    private static final int DIMENSION = 512;
+    private static final float TOLERANCE = 1e-4f;
+
+    private final SimilarityKernel scalar = new ScalarSimilarityKernel();
+    private final SimilarityKernel simd = new VectorApiSimilarityKernel();
+    private final Random random = new Random(42);
+
+    @Test
+    void dotMatchesScalarForEveryLengthAndOffset() {
+        float[] a = randomUnit(DIMENSION + 7);
+        float[] b = randomUnit(DIMENSION + 7);
+        for (int length = 0; length <= DIMENSION; length += 13) {
+            for (int offset = 0; offset < 7; offset++) {
+                assertEquals(scalar.dot(a, offset, b, 7 - offset, length),
+                        simd.dot(a, offset, b, 7 - offset, length), TOLERANCE, "length " + length);
+            }
+        }
+    }
+
+    @Test
+    void dotInt8MatchesScalar() {
+        float[] query = randomUnit(DIMENSION);
+        float[] row = randomUnit(DIMENSION + 3);
+        byte[] codes = new byte[DIMENSION + 3];
+        EmbeddingCodec.quantize(row, 0, row.length, codes, 0);
+        for (int length = 0; length <= DIMENSION; length += 17) {
+            for (int offset = 0; offset < 3; offset++) {
+                // Codes go up to 127, so the sums are two orders of magnitude larger
+                assertEquals(scalar.dotInt8(query, codes, offset, length),
+                        simd.dotInt8(query, codes, offset, length), TOLERANCE * 127, "length " + length);
+            }
+        }
+    }
+
+    @Test
+    void scoreRowsMatchesScalar() {
+        int rows = 300;
+        float[] matrix = new float[rows * DIMENSION];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(randomUnit(DIMENSION), 0, matrix, row * DIMENSION, DIMENSION);
+        }
+        float[] query = randomUnit(DIMENSION);
+        float[] expected = new float[rows];
+        float[] actual = new float[rows];
+        scalar.scoreRows(query, matrix, DIMENSION, 0, rows, expected);
+        simd.scoreRows(query, matrix, DIMENSION, 0, rows, actual);
+        for (int row = 0; row < rows; row++) {
+            assertEquals(expected[row], actual[row], TOLERANCE, "row " + row);
+        }
+    }
+
+    private float[] randomUnit(int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) vector[i] = (float) random.nextGaussian();
+        SimilarityKernel.normalize(vector, 0, dimension);
+        return vector;
+    }
+}
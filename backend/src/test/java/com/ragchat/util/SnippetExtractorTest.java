@@ -0,0 +1,75 @@
+package com.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SnippetExtractor must produce exactly the snippets of the regex implementation
+ * it replaced, failures included (both throw when a trimmed edge has no space).
+ */
+class SnippetExtractorTest {
+
+    private static final String[] VOCABULARY = {
+            "the", "revenue", "Revenue", "grew", "growth", "quarter", "2023", "20230", "12", "q4",
+            "v2.1", "margin", "margins", "operating", "costs", "цена", "Договор", "ключ", "a", "of",
+            "net", "income", "report", "report,", "(2023)", "x12y", "11", "1", "data-driven", "API"
+    };
+
+    private final Random random = new Random(21);
+
+    @Test
+    void matchesTheRegexImplementationOnRandomizedInputs() {
+        for (int pair = 0; pair < 2_000; pair++) {
+            String question = randomText(1 + random.nextInt(12), false);
+            String answer = randomText(random.nextInt(80), false);
+            String query = question + " " + answer;
+            SnippetExtractor extractor = new SnippetExtractor(query);
+            String content = randomText(random.nextInt(400), true);
+            assertEquals(outcome(() -> LegacySnippetExtractor.generateSmartSnippet(content, query)),
+                    outcome(() -> extractor.extract(content)), "query: " + query + "\ncontent: " + content);
+        }
+    }
+
+    @Test
+    void failsLikeTheRegexImplementationWhenAnEdgeHasNoSpace() {
+        String content = "x".repeat(100) + "revenue" + "y".repeat(200);
+        assertEquals(outcome(() -> LegacySnippetExtractor.generateSmartSnippet(content, "revenue")),
+                outcome(() -> new SnippetExtractor("revenue").extract(content)));
+    }
+
+    @Test
+    void fallsBackToTheStartOfTheChunk() {
+        String content = "x".repeat(300);
+        assertEquals("x".repeat(150) + "...", new SnippetExtractor("no matching keyword").extract(content));
+        assertEquals("x".repeat(150) + "...", new SnippetExtractor("a of").extract(content));
+        assertEquals("", new SnippetExtractor("anything").extract(""));
+    }
+
+    private String randomText(int words, boolean lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(lines && random.nextInt(15) == 0 ? "\n" : random.nextInt(20) == 0 ? "  " : " ");
+            text.append(random.nextInt(10) == 0 ? randomWord() : VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return text.toString();
+    }
+
+    private String randomWord() {
+        StringBuilder word = new StringBuilder();
+        for (int i = 1 + random.nextInt(8); i > 0; i--) {
+            word.append(random.nextInt(4) == 0 ? (char) ('0' + random.nextInt(10)) : (char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static String outcome(java.util.function.Supplier<String> snippet) {
+        try {
+            return snippet.get();
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+}
@@ -7,20 +7,25 @@ import Sidebar from '@/components/Sidebar';
 import ChatPanel from '@/components/ChatPanel';
 import ProfilePanel from '@/components/ProfilePanel';
 import {
-    sendMessage,
+    streamMessage,
     getConversations,
+    getConversation,
+    getMessages,
     deleteConversation,
     getDocuments,
+    getDocumentStatus,
     deleteDocument,
 } from '@/lib/api';
-import type { Message, Conversation, DocumentInfo } from '@/lib/api';
+import type { Message, ConversationSummary, DocumentInfo } from '@/lib/api';
 
 export default function ChatPage() {
     const { isAuthenticated, isLoading: authLoading, user, logout } = useAuth();
     const router = useRouter();
-    const [conversations, setConversations] = useState<Conversation[]>([]);
+    const [conversations, setConversations] = useState<ConversationSummary[]>([]);
+    const [conversationsCursor, setConversationsCursor] = useState<string | null>(null);
     const [activeId, setActiveId] = useState<string | null>(null);
     const [messages, setMessages] = useState<Message[]>([]);
+    const [messagesCursor, setMessagesCursor] = useState<string | null>(null);
     const [documents, setDocuments] = useState<DocumentInfo[]>([]);
     const [isLoading, setIsLoading] = useState(false);
     const [sidebarCollapsed, setSidebarCollapsed] = useState(false);
@@ -50,13 +55,25 @@ export default function ChatPage() {
 
     const loadConversations = async () => {
         try {
-            const convs = await getConversations();
-            setConversations(convs);
+            const page = await getConversations();
+            setConversations(page.items);
+            setConversationsCursor(page.nextCursor);
         } catch {
             // Backend might not be running yet
         }
     };
 
+    const loadMoreConversations = useCallback(async () => {
+        if (!conversationsCursor) return;
+        try {
+            const page = await getConversations(conversationsCursor);
+            setConversations((prev) => [...prev, ...page.items.filter((c) => !prev.some((p) => p.id === c.id))]);
+            setConversationsCursor(page.nextCursor);
+        } catch (err) {
+            console.error('Failed to load conversations:', err);
+        }
+    }, [conversationsCursor]);
+
     const loadDocuments = async (convId: string) => {
         try {
             const docs = await getDocuments(convId);
@@ -69,21 +86,39 @@ export default function ChatPage() {
     const handleSelectConversation = useCallback(async (id: string) => {
         setActiveId(id);
         setActiveView('chat');
-        const conv = conversations.find((c) => c.id === id);
-        if (conv) {
-            setMessages(conv.messages);
-        }
-        await loadDocuments(id);
-    }, [conversations]);
+        setMessages([]);
+        setMessagesCursor(null);
+        await Promise.all([
+            getConversation(id)
+                .then((conv) => {
+                    setMessages(conv.messages);
+                    setMessagesCursor(conv.messagesCursor);
+                })
+                .catch(() => setMessages([])),
+            loadDocuments(id),
+        ]);
+    }, []);
 
     const handleNewChat = useCallback(() => {
         setActiveId(null);
         setActiveView('chat');
         setMessages([]);
+        setMessagesCursor(null);
         setDocuments([]);
         pendingIdRef.current = null;
     }, []);
 
+    const loadOlderMessages = useCallback(async () => {
+        if (!activeId || !messagesCursor) return;
+        try {
+            const page = await getMessages(activeId, messagesCursor);
+            setMessages((prev) => [...page.items, ...prev]);
+            setMessagesCursor(page.nextCursor);
+        } catch (err) {
+            console.error('Failed to load older messages:', err);
+        }
+    }, [activeId, messagesCursor]);
+
     const handleDeleteConversation = useCallback(async (id: string) => {
         try {
             await deleteConversation(id);
@@ -106,31 +141,40 @@ export default function ChatPage() {
         setMessages((prev) => [...prev, userMsg]);
         setIsLoading(true);
 
-        try {
-            const response = await sendMessage({
-                message,
-                conversationId: convId,
+        // Assistant message is appended empty and filled in as deltas arrive
+        const assistantMsg: Message = {
+            role: 'assistant',
+            content: '',
+            timestamp: new Date().toISOString(),
+        };
+        setMessages((prev) => [...prev, assistantMsg]);
+        const updateAssistant = (update: (msg: Message) => Message) => {
+            setMessages((prev) => {
+                const next = [...prev];
+                next[next.length - 1] = update(next[next.length - 1]);
+                return next;
             });
+        };
+
+        try {
+            const conversationId = await streamMessage(
+                { message, conversationId: convId },
+                {
+                    onDelta: (text) => updateAssistant((msg) => ({ ...msg, content: msg.content + text })),
+                    onSources: (sources) => updateAssistant((msg) => ({ ...msg, sources })),
+                }
+            );
             if (!activeId) {
-                setActiveId(response.conversationId);
+                setActiveId(conversationId);
                 pendingIdRef.current = null;
             }
-            const assistantMsg: Message = {
-                role: 'assistant',
-                content: response.answer,
-                sources: response.sources,
-                timestamp: new Date().toISOString(),
-            };
-            setMessages((prev) => [...prev, assistantMsg]);
             await loadConversations();
         } catch (err) {
             console.error('Chat error:', err);
-            const errorMsg: Message = {
-                role: 'assistant',
-                content: 'Sorry, an error occurred. Please make sure the backend server is running on port 8081.',
-                timestamp: new Date().toISOString(),
-            };
-            setMessages((prev) => [...prev, errorMsg]);
+            updateAssistant((msg) => ({
+                ...msg,
+                content: msg.content || 'Sorry, an error occurred. Please make sure the backend server is running on port 8081.',
+            }));
         } finally {
             setIsLoading(false);
         }
@@ -144,6 +188,23 @@ export default function ChatPage() {
         loadConversations();
     }, [activeId]);
 
+    // Uploads are processed in the background; poll until they leave PROCESSING
+    const hasProcessing = documents.some((d) => d.status === 'PROCESSING');
+    useEffect(() => {
+        if (!hasProcessing) return;
+        const timer = setInterval(async () => {
+            const pending = documents.filter((d) => d.status === 'PROCESSING');
+            const updates = await Promise.all(
+                pending.map((d) => getDocumentStatus(d.id).catch(() => null))
+            );
+            const byId = new Map(updates.filter((u): u is DocumentInfo => u !== null).map((u) => [u.id, u]));
+            if (byId.size > 0) {
+                setDocuments((prev) => prev.map((d) => byId.get(d.id) ?? d));
+            }
+        }, 1500);
+        return () => clearInterval(timer);
+    }, [hasProcessing, documents]);
+
     const handleDocumentDeleted = useCallback(async (docId: string) => {
         try {
             await deleteDocument(docId);
@@ -182,6 +243,7 @@ export default function ChatPage() {
                 collapsed={sidebarCollapsed}
                 onToggle={handleToggleSidebar}
                 onProfileClick={() => setActiveView('profile')}
+                onLoadMore={conversationsCursor ? loadMoreConversations : undefined}
             />
 
             {activeView === 'chat' ? (
@@ -193,6 +255,7 @@ export default function ChatPage() {
                     documents={documents}
                     onDocumentUploaded={handleDocumentUploaded}
                     onDocumentDeleted={handleDocumentDeleted}
+                    onLoadOlder={messagesCursor ? loadOlderMessages : undefined}
                 />
             ) : (
                 <ProfilePanel
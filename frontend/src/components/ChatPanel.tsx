@@ -22,6 +22,7 @@ interface ChatPanelProps {
     documents: DocumentInfo[];
     onDocumentUploaded: (doc: DocumentInfo) => void;
     onDocumentDeleted: (id: string) => void;
+    onLoadOlder?: () => void; // Set while older messages can be fetched
 }
 
 // Features and suggestion arrays removed in favor of hardcoded asymmetrical layout components
@@ -34,6 +35,7 @@ export default function ChatPanel({
     documents,
     onDocumentUploaded,
     onDocumentDeleted,
+    onLoadOlder,
 }: ChatPanelProps) {
     const [input, setInput] = useState('');
     const [showUpload, setShowUpload] = useState(false);
@@ -41,9 +43,11 @@ export default function ChatPanel({
     const inputRef = useRef<HTMLTextAreaElement>(null);
     const scrollRef = useRef<HTMLDivElement>(null);
 
+    // Follow new and streamed messages, but not older ones loaded at the top
+    const lastMessage = messages[messages.length - 1];
     useEffect(() => {
         messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
-    }, [messages, isLoading]);
+    }, [lastMessage, isLoading]);
 
     // Auto-grow textarea
     useEffect(() => {
@@ -166,7 +170,15 @@ export default function ChatPanel({
                         </div>
                     ) : (
                         <div className="max-w-4xl mx-auto w-full px-6">
-                            {messages.map((msg, idx) => (
+                            {onLoadOlder && (
+                                <button
+                                    onClick={onLoadOlder}
+                                    className="w-full py-3 text-xs text-zinc-500 hover:text-zinc-300 transition-colors cursor-pointer"
+                                >
+                                    Load earlier messages
+                                </button>
+                            )}
+                            {messages.filter((msg) => msg.role === 'user' || msg.content).map((msg, idx) => (
                                 <MessageBubble
                                     key={`${msg.role}-${msg.timestamp || idx}-${idx}`}
                                     role={msg.role}
@@ -175,7 +187,8 @@ export default function ChatPanel({
                                     timestamp={msg.timestamp}
                                 />
                             ))}
-                            {isLoading && (
+                            {/* Loader until the first streamed text arrives */}
+                            {isLoading && !messages[messages.length - 1]?.content && (
                                 <MessageBubble role="assistant" content="" isLoading={true} />
                             )}
                             <div ref={messagesEndRef} className="h-4" />
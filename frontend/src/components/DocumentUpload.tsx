@@ -54,6 +54,10 @@ const formatSize = (bytes: number) => {
     return `${(bytes / (1024 * 1024)).toFixed(1)} MB`;
 };
 
+// Share of the file parsed so far; stays below 100 until the document is READY
+const formatProgress = (processedBytes: number, size: number) =>
+    `${Math.min(99, Math.floor((processedBytes / size) * 100))}%`;
+
 export default function DocumentUpload({
     conversationId,
     documents,
@@ -204,7 +208,14 @@ export default function DocumentUpload({
                                     </span>
                                 )}
                                 {doc.status === 'PROCESSING' && (
-                                    <Loader2 size={16} className="animate-spin" style={{ color: 'var(--accent)' }} />
+                                    <span className="flex items-center gap-1.5">
+                                        {doc.processedBytes > 0 && doc.size > 0 && (
+                                            <span className="text-xs text-zinc-500">
+                                                {formatProgress(doc.processedBytes, doc.size)}
+                                            </span>
+                                        )}
+                                        <Loader2 size={16} className="animate-spin" style={{ color: 'var(--accent)' }} />
+                                    </span>
                                 )}
                                 {doc.status === 'ERROR' && (
                                     <AlertCircle size={16} style={{ color: 'var(--error)' }} />
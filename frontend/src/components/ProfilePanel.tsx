@@ -9,7 +9,7 @@ import {
     IconLogOut as LogOut,
     IconChevronRight as ChevronRight,
 } from './icons';
-import type { Conversation, DocumentInfo } from '@/lib/api';
+import type { ConversationSummary, DocumentInfo } from '@/lib/api';
 import { useAuth } from '@/context/AuthContext';
 import SpotlightCard from './SpotlightCard';
 import ScrambleText from './ScrambleText';
@@ -18,7 +18,7 @@ import HoldButton from './HoldButton';
 import TickingNumber from './TickingNumber';
 
 interface ProfilePanelProps {
-    conversations: Conversation[];
+    conversations: ConversationSummary[];
     documents: DocumentInfo[];
     onClearData: () => void;
 }
@@ -108,7 +108,7 @@ export default function ProfilePanel({
     const [dataSharing, setDataSharing] = useState(false);
 
     // Calculate total messages
-    const totalMessages = conversations.reduce((acc, c) => acc + (c.messages?.length || 0), 0);
+    const totalMessages = conversations.reduce((acc, c) => acc + (c.messageCount || 0), 0);
 
     // Sync name from auth context when it loads
     useEffect(() => {
@@ -324,7 +324,7 @@ export default function ProfilePanel({
                                                 {conv.title || `Conversation ${idx + 1}`}
                                             </p>
                                             <p className="text-xs text-zinc-600 mt-0.5">
-                                                {conv.messages?.length || 0} messages
+                                                {conv.messageCount || 0} messages
                                             </p>
                                         </div>
                                         <ChevronRight size={14} className="text-zinc-700 group-hover:text-zinc-500 transition-colors shrink-0" />
@@ -15,10 +15,10 @@ import {
 import Image from 'next/image';
 import chatbotIcon from '@/icons/chatbot.png';
 import RippleButton from './RippleButton';
-import type { Conversation } from '@/lib/api';
+import type { ConversationSummary } from '@/lib/api';
 
 interface SidebarProps {
-    conversations: Conversation[];
+    conversations: ConversationSummary[];
     activeId: string | null;
     onSelect: (id: string) => void;
     onNew: () => void;
@@ -26,6 +26,7 @@ interface SidebarProps {
     collapsed: boolean;
     onToggle: () => void;
     onProfileClick: () => void;
+    onLoadMore?: () => void; // Set while more conversations can be fetched
 }
 
 function getTimeGroup(dateStr: string): string {
@@ -50,6 +51,7 @@ export default function Sidebar({
     collapsed,
     onToggle,
     onProfileClick,
+    onLoadMore,
 }: SidebarProps) {
     const [search, setSearch] = useState('');
 
@@ -58,7 +60,7 @@ export default function Sidebar({
     );
 
     const grouped = useMemo(() => {
-        const groups: Record<string, Conversation[]> = {};
+        const groups: Record<string, ConversationSummary[]> = {};
         filtered.forEach((conv) => {
             const group = getTimeGroup(conv.updatedAt || conv.createdAt || new Date().toISOString());
             if (!groups[group]) groups[group] = [];
@@ -223,7 +225,7 @@ export default function Sidebar({
                                                     <p
                                                         className="text-[11px] mt-0.5 text-zinc-600"
                                                     >
-                                                        {conv.messages.length} msgs
+                                                        {conv.messageCount} msgs
                                                         {conv.documentIds.length > 0 && (
                                                             <span className="inline-flex items-center gap-1 ml-2">
                                                                 <FileText size={9} />
@@ -258,6 +260,14 @@ export default function Sidebar({
                                 No conversations yet
                             </div>
                         )}
+                        {onLoadMore && (
+                            <button
+                                onClick={onLoadMore}
+                                className="w-full py-2 text-xs text-zinc-500 hover:text-zinc-300 transition-colors cursor-pointer"
+                            >
+                                Load more
+                            </button>
+                        )}
                     </>
                 ) : (
                     <AnimatePresence>
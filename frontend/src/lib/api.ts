@@ -84,6 +84,7 @@ export interface DocumentInfo {
     type: string;
     size: number;
     totalChunks: number;
+    processedBytes: number;
     conversationId: string;
     uploadedAt: string;
     status: 'PROCESSING' | 'READY' | 'ERROR';
@@ -101,6 +102,24 @@ export interface Conversation {
     title: string;
     messages: Message[];
     documentIds: string[];
+    messagesCursor: string | null; // Set when older messages exist; see getMessages
+    createdAt: string;
+    updatedAt: string;
+}
+
+// Keyset-paginated list; pass nextCursor back to get the following page
+export interface CursorPage<T> {
+    items: T[];
+    nextCursor: string | null;
+}
+
+// List entry returned by /conversations; the history comes from getConversation
+export interface ConversationSummary {
+    id: string;
+    title: string;
+    messageCount: number;
+    lastMessage: string | null;
+    documentIds: string[];
     createdAt: string;
     updatedAt: string;
 }
@@ -115,6 +134,65 @@ export async function sendMessage(request: ChatRequest): Promise<ChatResponse> {
     return res.json();
 }
 
+export interface StreamHandlers {
+    onMeta?: (conversationId: string) => void;
+    onDelta: (text: string) => void;
+    onSources?: (sources: SourceReference[]) => void;
+}
+
+// Streams the answer from /chat/stream (server-sent events over a POST body).
+// Resolves with the conversation id once the "done" event arrives.
+export async function streamMessage(request: ChatRequest, handlers: StreamHandlers, signal?: AbortSignal): Promise<string> {
+    const res = await fetch(`${API_BASE}/chat/stream`, {
+        method: 'POST',
+        headers: { ...authHeaders(), Accept: 'text/event-stream' },
+        body: JSON.stringify(request),
+        signal,
+    });
+    if (!res.ok || !res.body) throw new Error(`Chat failed: ${res.statusText}`);
+
+    const reader = res.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    let conversationId = request.conversationId ?? '';
+
+    while (true) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true });
+
+        // Events are separated by a blank line
+        let boundary;
+        while ((boundary = buffer.search(/\r?\n\r?\n/)) >= 0) {
+            const raw = buffer.slice(0, boundary);
+            buffer = buffer.slice(boundary).replace(/^\r?\n\r?\n/, '');
+
+            let event = 'message';
+            const dataLines: string[] = [];
+            for (const line of raw.split(/\r?\n/)) {
+                if (line.startsWith('event:')) event = line.slice(6).trim();
+                else if (line.startsWith('data:')) dataLines.push(line.slice(5));
+            }
+            if (dataLines.length === 0) continue;
+            const data = JSON.parse(dataLines.join('\n'));
+
+            if (event === 'meta') {
+                conversationId = data.conversationId;
+                handlers.onMeta?.(conversationId);
+            } else if (event === 'delta') {
+                handlers.onDelta(data.content);
+            } else if (event === 'sources') {
+                handlers.onSources?.(data);
+            } else if (event === 'error') {
+                throw new Error(data.error || 'Chat failed');
+            } else if (event === 'done') {
+                return conversationId;
+            }
+        }
+    }
+    return conversationId;
+}
+
 export async function uploadDocument(
     file: File,
     conversationId: string,
@@ -138,7 +216,9 @@ export async function uploadDocument(
             if (xhr.status >= 200 && xhr.status < 300) {
                 resolve(JSON.parse(xhr.responseText));
             } else {
-                reject(new Error(`Upload failed: ${xhr.statusText}`));
+                reject(new Error(xhr.status === 429
+                    ? 'Too many uploads in progress, try again shortly'
+                    : `Upload failed: ${xhr.statusText}`));
             }
         });
 
@@ -151,6 +231,14 @@ export async function uploadDocument(
     });
 }
 
+export async function getDocumentStatus(documentId: string): Promise<DocumentInfo> {
+    const res = await fetch(`${API_BASE}/documents/${documentId}/status`, {
+        headers: authHeaders(),
+    });
+    if (!res.ok) throw new Error(`Failed to fetch document status: ${res.statusText}`);
+    return res.json();
+}
+
 export async function getDocuments(conversationId: string): Promise<DocumentInfo[]> {
     const res = await fetch(`${API_BASE}/documents?conversationId=${conversationId}`, {
         headers: authHeaders(),
@@ -167,8 +255,9 @@ export async function deleteDocument(documentId: string): Promise<void> {
     if (!res.ok) throw new Error(`Failed to delete document: ${res.statusText}`);
 }
 
-export async function getConversations(): Promise<Conversation[]> {
-    const res = await fetch(`${API_BASE}/conversations`, {
+export async function getConversations(cursor?: string): Promise<CursorPage<ConversationSummary>> {
+    const query = cursor ? `?cursor=${encodeURIComponent(cursor)}` : '';
+    const res = await fetch(`${API_BASE}/conversations${query}`, {
         headers: authHeaders(),
     });
     if (!res.ok) throw new Error(`Failed to fetch conversations: ${res.statusText}`);
@@ -183,6 +272,15 @@ export async function getConversation(id: string): Promise<Conversation> {
     return res.json();
 }
 
+// Messages older than the cursor, oldest first
+export async function getMessages(conversationId: string, before: string): Promise<CursorPage<Message>> {
+    const res = await fetch(`${API_BASE}/conversations/${conversationId}/messages?before=${encodeURIComponent(before)}`, {
+        headers: authHeaders(),
+    });
+    if (!res.ok) throw new Error(`Failed to fetch messages: ${res.statusText}`);
+    return res.json();
+}
+
 export async function deleteConversation(id: string): Promise<void> {
     const res = await fetch(`${API_BASE}/conversations/${id}`, {
         method: 'DELETE',